@@ -0,0 +1,184 @@
+/*
+ * StreamedDataInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.anon.discrete.exec;
+
+import com.revo.deployr.client.example.data.io.columnar.*;
+import com.revo.deployr.client.example.data.io.encode.*;
+import com.revo.deployr.client.example.data.io.http.*;
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * StreamedDataInEncodedDataOut
+ *
+ * Executes dataIO.R as an anonymous user with the "hip" data.frame
+ * input encoded while the request body is being sent.
+ *
+ * RClient.executeScript encodes every input to a single String
+ * before the call is made, which for a large data.frame costs
+ * several times the size of the data in heap. This example calls
+ * the DeployR /r/repository/script/execute API directly instead,
+ * so the RDataJsonWriter can encode from the column buffers into
+ * the chunked HTTP request body as it is written.
+ */
+public class StreamedDataInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(StreamedDataInEncodedDataOut.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final File LOCAL_DATA = new File("analytics/hipStar.dat");
+
+    public static void main(String args[]) throws Exception {
+
+        HttpURLConnection conn = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            final File dataFile = dataSource();
+            final NumericEncodingPolicy policy =
+                                    NumericEncodingPolicy.getDefault();
+            EncodedInputCache cache = EncodedInputCache.getDefault();
+
+            /*
+             * Execute a public analytics Web service as an anonymous
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             *
+             * The request body is sent in chunks, so its length
+             * need not be known, or held, up front.
+             */
+            URL url = new URL(endpoint + "/r/repository/script/execute");
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setChunkedStreamingMode(CHUNK_SIZE);
+            conn.setRequestProperty("Content-Type",
+                "application/x-www-form-urlencoded; charset=UTF-8");
+
+            long start = System.currentTimeMillis();
+            FormUrlEncodingWriter body =
+                new FormUrlEncodingWriter(conn.getOutputStream());
+            body.parameter("format", "json")
+                .parameter("filename", "dataIO.R")
+                .parameter("directory", "example-data-io")
+                .parameter("author", "testuser")
+                .parameter("robjects", "hipDim,hipNames")
+                .startParameter("inputs");
+
+            /*
+             * Encode the "hip" input into the body, or copy its
+             * earlier encoding there. The key is a fingerprint of
+             * the data file and of the numeric encoding policy, so
+             * while neither changes parsing and encoding do not run
+             * again; with -Dinput.cache.dir set this holds across
+             * runs.
+             *
+             * The policy is set with -Dencode.* properties, see
+             * NumericEncodingPolicy, and when the input is encoded
+             * the payload saved per column is reported.
+             */
+            RDataJsonWriter encoder = new RDataJsonWriter(body);
+            encoder.startInputs();
+            cache.writeMember(EncodedInputCache.fingerprint(
+                "hip", EncodedInputCache.fingerprint(dataFile), policy),
+                new EncodedInputCache.Encoder() {
+                    public void encode(RDataJsonWriter writer)
+                                                    throws Exception {
+                        EncodingReport report = new EncodingReport();
+                        writer.setPolicy(policy).setReport(report);
+                        writer.writeMember("hip", loadData(dataFile));
+                        report.report(log);
+                    }
+                }, encoder);
+            encoder.endInputs();
+            body.close();
+
+            log.info("[   DATA INPUT   ] Streamed DeployR-encoded R input, " +
+                "chars=" + encoder.getCharCount() + ", bytes=" +
+                body.getByteCount() + ", ms=" +
+                (System.currentTimeMillis() - start) + ", " + cache + ".");
+
+            /*
+             * The response is the DeployR JSON response for the
+             * execution, see the API Reference on the DeployR
+             * website for its structure.
+             */
+            int status = conn.getResponseCode();
+            InputStream is = status < 400 ? conn.getInputStream()
+                                          : conn.getErrorStream();
+            String response = is == null ? "" : IOUtils.toString(is, "UTF-8");
+            IOUtils.closeQuietly(is);
+
+            log.info("[   EXECUTION    ] Discrete R script execution " +
+                "completed, status=" + status + ", success=" +
+                response.contains("\"success\":true") +
+                ", response bytes=" + response.length() + ".");
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            if(conn != null) {
+                conn.disconnect();
+            }
+        }
+
+    }
+
+    /*
+     * dataSource
+     *
+     * Prefers the local copy of the dataset, see
+     * EncodedDataInBinaryFileOut.simulateGeneratedData. The remote
+     * copy is kept by the HTTP cache, revalidated on each call.
+     */
+    private static File dataSource() throws IOException {
+
+        if(LOCAL_DATA.isFile()) {
+            return LOCAL_DATA;
+        }
+        return HttpFileCache.getDefault().fetch(
+            new URL("http://astrostatistics.psu.edu/datasets/HIP_star.dat"));
+    }
+
+    private static DatFrame loadData(File dataFile) throws IOException {
+
+        DatFrame frame;
+        if(dataFile == LOCAL_DATA) {
+            frame = DatSnapshot.loadOrParse(dataFile);
+        } else {
+            InputStream inputStream = new FileInputStream(dataFile);
+            try {
+                frame = new DatParser().parse(inputStream);
+            } finally {
+                IOUtils.closeQuietly(inputStream);
+            }
+        }
+
+        log.info("[   DATA INPUT   ] Loaded " + frame.getRowCount() +
+            " rows, " + frame.getColumns().size() + " columns [ DatFrame ].");
+
+        return frame;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * LimitedRepoFileInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.discrete.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.pool.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * LimitedRepoFileInEncodedDataOut
+ *
+ * RepoFileInEncodedDataOut fanned out by many concurrent callers
+ * on one authenticated connection, with every executeScript call
+ * made through the ExecutionLimiter, so the server sees at most
+ * its window of executions at once. Every -Dexec.urgent'th caller
+ * executes at a higher priority and overtakes the queue.
+ *
+ * Optional system properties:
+ *   -Dexec.callers=n          concurrent callers (default 32)
+ *   -Dexec.runs=n             executions (default 64)
+ *   -Dexec.urgent=n           every n'th run urgent (default 8)
+ *   -Dexec.limit.*            limiter settings, see ExecutionLimiter
+ */
+public class LimitedRepoFileInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(LimitedRepoFileInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        final ExecutionLimiter limiter = ExecutionLimiter.getDefault();
+        RClient rClient = null;
+        ExecutorService callers = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser.
+             */
+            rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            final RClient client = rClient;
+            int runs = Integer.getInteger("exec.runs", 64);
+            int urgent = Math.max(Integer.getInteger("exec.urgent", 8), 1);
+            callers = Executors.newFixedThreadPool(
+                                Integer.getInteger("exec.callers", 32));
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            long start = System.currentTimeMillis();
+
+            for(int run = 1; run <= runs; run++) {
+                final int priority = run % urgent == 0 ?
+                    ExecutionLimiter.NORM_PRIORITY + 1 :
+                    ExecutionLimiter.NORM_PRIORITY;
+                futures.add(callers.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        long runStart = System.currentTimeMillis();
+                        limiter.execute(priority,
+                            new ExecutionLimiter.Execution<RScriptExecution>() {
+                                public RScriptExecution execute()
+                                    throws RClientException, RSecurityException,
+                                           RDataException, RGridException {
+                                    return executeScript(client);
+                                }
+                            });
+                        return System.currentTimeMillis() - runStart;
+                    }
+                }));
+            }
+
+            long latencyTotal = 0, latencyMax = 0;
+            int completed = 0, rejected = 0, failed = 0;
+            for(Future<Long> future : futures) {
+                try {
+                    long latency = future.get();
+                    latencyTotal += latency;
+                    latencyMax = Math.max(latencyMax, latency);
+                    completed++;
+                } catch(ExecutionException eex) {
+                    if(eex.getCause() instanceof ExecutionRejectedException) {
+                        rejected++;
+                    } else {
+                        failed++;
+                        log.warn("Execution failed, ex=" + eex.getCause());
+                    }
+                }
+            }
+            long elapsed = System.currentTimeMillis() - start;
+
+            log.info("[   EXECUTION    ] Discrete R script executions " +
+                "completed, runs=" + runs + ", completed=" + completed +
+                ", rejected=" + rejected + ", failed=" + failed +
+                ", ms=" + elapsed + ", per second=" +
+                (elapsed == 0 ? 0 : completed * 1000L / elapsed) + ".");
+            log.info("[   EXECUTION    ] Limited executions [ " +
+                "ExecutionLimiter ], latency avg=" + (completed == 0 ? 0 :
+                latencyTotal / completed) + "ms, max=" + latencyMax +
+                "ms, " + limiter + ".");
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            if (callers != null) {
+                callers.shutdownNow();
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+    /*
+     * Executes an analytics Web service as an authenticated user
+     * based on a repository-managed R script:
+     * /testuser/example-data-io/dataIO.R
+     *
+     * Preloads from the DeployR repository the following binary R
+     * object input file:
+     * /testuser/example-data-io/hipStar.rData
+     */
+    private static RScriptExecution executeScript(RClient rClient)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+
+        AnonymousProjectExecutionOptions options =
+                new AnonymousProjectExecutionOptions();
+
+        ProjectPreloadOptions preloadWorkspace =
+                            new ProjectPreloadOptions();
+        preloadWorkspace.filename = "hipStar.rData";
+        preloadWorkspace.directory = "example-data-io";
+        preloadWorkspace.author = "testuser";
+        options.preloadWorkspace = preloadWorkspace;
+        options.routputs = Arrays.asList("hipDim");
+
+        return rClient.executeScript("dataIO.R",
+                "example-data-io", "testuser", null, options);
+    }
+
+}
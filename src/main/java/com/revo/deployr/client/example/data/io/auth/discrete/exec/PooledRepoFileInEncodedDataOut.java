@@ -0,0 +1,165 @@
+/*
+ * PooledRepoFileInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.discrete.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.example.data.io.pool.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * PooledRepoFileInEncodedDataOut
+ *
+ * RepoFileInEncodedDataOut run as many short units of work by
+ * concurrent workers. Each unit borrows an authenticated RClient
+ * from the RClientPool rather than connecting and logging in, and
+ * releases it back when done, so connect and login are paid once
+ * per pooled client instead of once per unit.
+ *
+ * Optional system properties:
+ *   -Dpool.workers=n          concurrent workers (default 4)
+ *   -Dpool.units=n            units of work (default 16)
+ *   -Dclient.pool.*           pool settings, see RClientPool
+ */
+public class PooledRepoFileInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(PooledRepoFileInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        final RClientPool pool = RClientPool.getDefault();
+        ExecutorService executor = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            final String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            final String username = System.getProperty("username");
+            final String password = System.getProperty("password");
+            int workers = Integer.getInteger("pool.workers", 4);
+            int units = Integer.getInteger("pool.units", 16);
+
+            /*
+             * Run the units of work. Each one borrows an
+             * authenticated connection [ PooledClient ] and
+             * executes a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             */
+            executor = Executors.newFixedThreadPool(workers);
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            long start = System.currentTimeMillis();
+
+            for(int i = 0; i < units; i++) {
+                futures.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        long borrowStart = System.currentTimeMillis();
+                        PooledClient client =
+                            pool.borrow(endpoint, username, password);
+                        long borrowMillis =
+                            System.currentTimeMillis() - borrowStart;
+                        try {
+                            execute(client.getRClient());
+                            client.release();
+                        } finally {
+                            /*
+                             * No-op after release, a client whose
+                             * execution failed is discarded.
+                             */
+                            client.invalidate();
+                        }
+                        return borrowMillis;
+                    }
+                }));
+            }
+
+            long borrowTotal = 0, borrowMax = 0;
+            int failed = 0;
+            for(Future<Long> future : futures) {
+                try {
+                    long borrowMillis = future.get();
+                    borrowTotal += borrowMillis;
+                    borrowMax = Math.max(borrowMax, borrowMillis);
+                } catch(ExecutionException eex) {
+                    failed++;
+                    log.warn("Unit of work failed, ex=" + eex.getCause());
+                }
+            }
+
+            log.info("[   EXECUTION    ] Discrete R script executions " +
+                "completed, units=" + units + ", failed=" + failed +
+                ", workers=" + workers + ", ms=" +
+                (System.currentTimeMillis() - start) + ".");
+            log.info("[   CONNECTION   ] Pooled connections [ RClientPool ], " +
+                "borrow avg=" + (units == failed ? 0 :
+                            borrowTotal / (units - failed)) +
+                "ms, max=" + borrowMax + "ms, " + pool + ".");
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            /*
+             * Log out and release the pooled connections before
+             * application exits.
+             */
+            pool.close();
+        }
+
+    }
+
+    /*
+     * One unit of work, the execution of RepoFileInEncodedDataOut
+     * on an authenticated rClient.
+     */
+    private static void execute(RClient rClient) throws Exception {
+
+        AnonymousProjectExecutionOptions options =
+                new AnonymousProjectExecutionOptions();
+
+        /*
+         * Preload from the DeployR repository the following
+         * binary R object input file:
+         * /testuser/example-data-io/hipStar.rData
+         */
+        ProjectPreloadOptions preloadWorkspace =
+                            new ProjectPreloadOptions();
+        preloadWorkspace.filename = "hipStar.rData";
+        preloadWorkspace.directory = "example-data-io";
+        preloadWorkspace.author = "testuser";
+        options.preloadWorkspace = preloadWorkspace;
+        options.routputs = Arrays.asList("hipDim");
+
+        RScriptExecution exec =
+                rClient.executeScript("dataIO.R",
+                        "example-data-io", "testuser", null, options);
+
+        List<RData> objects = exec.about().workspaceObjects;
+        for(RData rData : objects) {
+            if(rData instanceof RNumericVector) {
+                log.debug("Retrieved " + rData.getName() + " value=" +
+                                ((RNumericVector) rData).getValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * ResumedRepoFileInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.discrete.exec;
+
+import com.revo.deployr.client.example.data.io.http.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ResumedRepoFileInEncodedDataOut
+ *
+ * RepoFileInEncodedDataOut made through the DeployR API directly,
+ * on an authenticated session that is saved on exit and resumed
+ * by the next run, see RestSession and SessionStore. Run it twice
+ * within the server session timeout: the second run makes no
+ * login call. Without a session store nothing can resume the
+ * session, so it is ended on exit.
+ *
+ * Optional system properties:
+ *   -Dsession.store=file      enables the encrypted session store
+ *   -Dsession.logout=true     end the session on exit even so
+ */
+public class ResumedRepoFileInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(ResumedRepoFileInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RestSession session = null;
+        SessionStore store = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            store = SessionStore.getDefault();
+            if(store == null) {
+                log.info("[ CONFIGURATION  ] No -Dsession.store set, the " +
+                    "session will not outlive this run.");
+            }
+
+            /*
+             * The session logs in on its first call, unless the
+             * store holds a session of the user for endpoint.
+             */
+            session = new RestSession(endpoint,
+                System.getProperty("username"),
+                System.getProperty("password"), store);
+
+            /*
+             * Execute an analytics Web service as an authenticated
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             *
+             * Preload from the DeployR repository the following
+             * binary R object input file:
+             * /testuser/example-data-io/hipStar.rData
+             */
+            Map<String, String> params = new LinkedHashMap<String, String>();
+            params.put("filename", "dataIO.R");
+            params.put("directory", "example-data-io");
+            params.put("author", "testuser");
+            params.put("preloadobjectname", "hipStar.rData");
+            params.put("preloadobjectdirectory", "example-data-io");
+            params.put("preloadobjectauthor", "testuser");
+            params.put("robjects", "hipDim,hipNames");
+
+            long start = System.currentTimeMillis();
+            String response =
+                session.execute("/r/repository/script/execute", params);
+
+            log.info("[ AUTHENTICATION ] " + (session.isResumed() ?
+                "Resumed saved authenticated session" :
+                "Logged in new authenticated session") + ", logins=" +
+                session.getLoginCount() + ".");
+
+            log.info("[   EXECUTION    ] Discrete R script execution " +
+                "completed, response bytes=" + response.length() +
+                ", ms=" + (System.currentTimeMillis() - start) + ".");
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (session != null && (store == null ||
+                            Boolean.getBoolean("session.logout"))) {
+                    /*
+                     * End the session, unless the store keeps it
+                     * for the next run to resume.
+                     */
+                    session.logout();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
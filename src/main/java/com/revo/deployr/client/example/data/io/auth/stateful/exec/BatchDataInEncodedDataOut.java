@@ -0,0 +1,187 @@
+/*
+ * BatchDataInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.upload.*;
+import java.util.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * Optional system properties:
+ *   -Dbatch.dir=dir           local directory (default analytics)
+ *   -Dbatch.glob=glob         files to upload (default *.{dat,rData})
+ *   -Dbatch.concurrency=n     uploads in flight (default 4)
+ *   -Dupload.compress=true    gzip compress each upload
+ */
+public class BatchDataInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(BatchDataInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RProject rProject = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Create a temporary project (R session).
+             */
+            rProject = rUser.createProject();
+
+            log.info("[  GO STATEFUL   ] Created stateful temporary " +
+                    "R session [ RProject ].");
+
+            /*
+             * Upload every input file of the job to the working
+             * directory of the project, several at a time. Failed
+             * files are retried, the outcome of the whole batch
+             * comes back as one BatchUploadResult.
+             */
+            BatchUploader batch = new BatchUploader(new ProjectUploader()
+                    .setCompress(Boolean.getBoolean("upload.compress")))
+                .setConcurrency(Integer.getInteger("batch.concurrency", 4))
+                .setProgressListener(new UploadProgressListener() {
+                    public void progress(File file, boolean uploaded,
+                                         int filesDone, int filesTotal,
+                                         long bytesDone, long bytesTotal) {
+                        log.info("[  DATA UPLOAD   ] " + filesDone + "/" +
+                            filesTotal + " files, " + bytesDone + "/" +
+                            bytesTotal + " bytes, " + file.getName() +
+                            (uploaded ? " uploaded." : " failed."));
+                    }
+                });
+            BatchUploadResult upload = batch.upload(rProject,
+                new File(System.getProperty("batch.dir", "analytics")),
+                System.getProperty("batch.glob", "*.{dat,rData}"));
+
+            if(!upload.isSuccessful()) {
+                throw new IOException("Batch upload failed, files=" +
+                                    upload.getFailures().keySet());
+            }
+
+            log.info("[  DATA UPLOAD   ] Uploaded data file inputs " +
+                "to working directory, " + upload + " [ BatchUploadResult ].");
+
+            /*
+             * Request the retrieval of two vector objects from the
+             * workspace following the execution:
+             * 'hipDim', 'hipNames'.
+             */
+            ProjectExecutionOptions options =
+                new ProjectExecutionOptions();
+            options.routputs = Arrays.asList("hipDim", "hipNames");
+
+            log.info("[  EXEC OPTION   ] DeployR-encoded R object request " +
+                "set on execution [ ProjectExecutionOptions.routputs ].");
+
+            /*
+             * Execute a public analytics Web service as an authenticated
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             */
+            RProjectExecution exec =
+                    rProject.executeScript("dataIO.R",
+                            "example-data-io", "testuser", null, options);
+
+            log.info("[   EXECUTION    ] Stateful R script " +
+                    "execution completed [ RProjectExecution ].");
+
+            List<RData> objects = exec.about().workspaceObjects;
+
+            for(RData rData : objects) {
+                if(rData instanceof RNumericVector) {
+                    List<Double> hipDimVal =
+                        ((RNumericVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipDimVal);
+                } else
+                if(rData instanceof RStringVector) {
+                    List<String> hipNamesVal =
+                        ((RStringVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipNamesVal);
+                }
+            }
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (rProject != null) {
+                    /*
+                     * Close rProject before application exits.
+                     */
+                    rProject.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * ChunkedDataInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import com.revo.deployr.client.example.data.io.encode.*;
+import java.util.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+public class ChunkedDataInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(ChunkedDataInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RProject rProject = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Determine the chunk size in rows, and whether the
+             * chunks go in one execution (combined) or in one
+             * execution each (sequential).
+             */
+            int chunkRows = Integer.getInteger("chunk.rows", 1000);
+            ChunkedInputs.Mode mode = ChunkedInputs.Mode.valueOf(
+                System.getProperty("chunk.mode", "sequential").toUpperCase());
+            log.info("[ CONFIGURATION  ] Using chunk rows=" + chunkRows +
+                                                    ", mode=" + mode);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Create a temporary project (R session).
+             */
+            rProject = rUser.createProject();
+
+            log.info("[  GO STATEFUL   ] Created stateful temporary " +
+                    "R session [ RProject ].");
+
+            /*
+             * Send the "hip" data.frame in row blocks of at most
+             * chunkRows rows rather than as one large input. The
+             * blocks are reassembled into "hip" in the project
+             * workspace before the script is executed.
+             */
+            DatFrame frame = DatSnapshot.loadOrParse(
+                                    new File("analytics/hipStar.dat"));
+            ChunkedInputs inputs = new ChunkedInputs("hip", frame, chunkRows);
+            long start = System.currentTimeMillis();
+            inputs.send(rProject, mode);
+
+            log.info("[   DATA INPUT   ] DeployR-encoded R input sent in " +
+                inputs.getChunkCount() + " chunks, ms=" +
+                (System.currentTimeMillis() - start) + " [ ChunkedInputs ].");
+
+            /*
+             * Request the retrieval of the two vector objects from
+             * the workspace following the execution.
+             */
+            ProjectExecutionOptions options =
+                new ProjectExecutionOptions();
+            options.routputs = Arrays.asList("hipDim", "hipNames");
+
+            /*
+             * Execute a public analytics Web service as an authenticated
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             *
+             * The script finds "hip" already in the workspace.
+             */
+            RProjectExecution exec =
+                    rProject.executeScript("dataIO.R",
+                            "example-data-io", "testuser", null, options);
+
+            log.info("[   EXECUTION    ] Stateful R script " +
+                    "execution completed [ RProjectExecution ].");
+
+            List<RData> objects = exec.about().workspaceObjects;
+
+            for(RData rData : objects) {
+                if(rData instanceof RNumericVector) {
+                    List<Double> hipDimVal =
+                        ((RNumericVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipDimVal);
+                } else
+                if(rData instanceof RStringVector) {
+                    List<String> hipNamesVal =
+                        ((RStringVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipNamesVal);
+                }
+            }
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (rProject != null) {
+                    /*
+                     * Close rProject before application exits.
+                     */
+                    rProject.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
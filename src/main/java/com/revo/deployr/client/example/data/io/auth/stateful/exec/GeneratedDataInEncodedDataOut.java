@@ -0,0 +1,208 @@
+/*
+ * GeneratedDataInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.upload.*;
+import java.util.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * Optional system properties:
+ *   -Dgenerate.rows=n       rows generated (default 100000)
+ *   -Dupload.compress=true  gzip compress the piped upload
+ */
+public class GeneratedDataInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(GeneratedDataInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RProject rProject = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Create a temporary project (R session).
+             */
+            rProject = rUser.createProject();
+
+            log.info("[  GO STATEFUL   ] Created stateful temporary " +
+                    "R session [ RProject ].");
+
+            /*
+             * Upload data generated by the application straight
+             * into the working directory of the project. Rows are
+             * written on a producer thread into a bounded pipe
+             * that the upload drains, no local file is written
+             * and memory use does not grow with the row count.
+             */
+            final int rows = Integer.getInteger("generate.rows", 100000);
+            DirectoryUploadOptions upOpts = new DirectoryUploadOptions();
+            upOpts.filename = "hipStar.dat";
+            upOpts.overwrite = true;
+            ProjectUploader uploader = new ProjectUploader()
+                .setCompress(Boolean.getBoolean("upload.compress"));
+            UploadResult upload = uploader.upload(rProject,
+                new DataProducer() {
+                    public void writeTo(OutputStream out) throws Exception {
+                        simulateGeneratedData(out, rows);
+                    }
+                }, upOpts);
+
+            log.info("[  DATA UPLOAD   ] Uploaded generated data input " +
+                "to working directory, rows=" + rows + ", source=" +
+                upload.getSourceBytes() + ", sent=" + upload.getSentBytes() +
+                " bytes [ RProjectFile ].");
+
+            /*
+             * Request the retrieval of two vector objects from the
+             * workspace following the execution:
+             * 'hipDim', 'hipNames'.
+             */
+            ProjectExecutionOptions options =
+                new ProjectExecutionOptions();
+            options.routputs = Arrays.asList("hipDim", "hipNames");
+
+            log.info("[  EXEC OPTION   ] DeployR-encoded R object request " +
+                "set on execution [ ProjectExecutionOptions.routputs ].");
+
+            /*
+             * Execute a public analytics Web service as an authenticated
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             */
+            RProjectExecution exec =
+                    rProject.executeScript("dataIO.R",
+                            "example-data-io", "testuser", null, options);
+
+            log.info("[   EXECUTION    ] Stateful R script " +
+                    "execution completed [ RProjectExecution ].");
+
+            List<RData> objects = exec.about().workspaceObjects;
+
+            for(RData rData : objects) {
+                if(rData instanceof RNumericVector) {
+                    List<Double> hipDimVal =
+                        ((RNumericVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipDimVal);
+                } else
+                if(rData instanceof RStringVector) {
+                    List<String> hipNamesVal =
+                        ((RStringVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipNamesVal);
+                }
+            }
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (rProject != null) {
+                    /*
+                     * Close rProject before application exits.
+                     */
+                    rProject.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+    /*
+     * Simulate application generated data in the layout of the
+     * Hipparcos star dataset. This could just as well be rows
+     * read from a database cursor or another service; they are
+     * written as produced, never held in memory as a whole.
+     */
+    private static void simulateGeneratedData(OutputStream out, int rows)
+                                                        throws IOException {
+
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        Random random = new Random(42);
+
+        writer.write("HIP\tVmag\tRA\tDE\tPlx\tpmRA\tpmDE\te_Plx\tB-V\n");
+        for(int i = 0; i < rows; i++) {
+            writer.write(String.format(Locale.US,
+                "%d\t%.2f\t%.6f\t%.6f\t%.2f\t%.2f\t%.2f\t%.2f\t%.3f\n",
+                i + 1,
+                4 + random.nextDouble() * 8,
+                random.nextDouble() * 360,
+                random.nextDouble() * 180 - 90,
+                random.nextDouble() * 40,
+                random.nextGaussian() * 100,
+                random.nextGaussian() * 100,
+                random.nextDouble() * 3,
+                random.nextDouble() * 2));
+        }
+        writer.flush();
+    }
+
+}
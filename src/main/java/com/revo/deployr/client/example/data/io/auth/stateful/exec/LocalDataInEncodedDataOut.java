@@ -18,6 +18,7 @@ import com.revo.deployr.client.factory.*;
 import com.revo.deployr.client.params.*;
 import com.revo.deployr.client.auth.RAuthentication;
 import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.upload.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
@@ -38,6 +39,7 @@ public class LocalDataInEncodedDataOut {
 
         RClient rClient = null;
         RProject rProject = null;
+        UploadManifest manifest = null;
 
         try {
 
@@ -94,99 +96,48 @@ public class LocalDataInEncodedDataOut {
 
             /* 
              * Upload a data file from local disk to the working
-             * directory of your temporary project (R session.)
+             * directory of your temporary project (R session), then
+             * execute on it, -Dupload.runs times on the same project.
+             *
+             * The file is memory-mapped, the upload streams
+             * straight from the mapping without a heap copy.
+             *
+             * With -Dupload.compress=true the file is gzip
+             * compressed as it is uploaded. It keeps the name
+             * hipStar.dat, read.table decompresses it on read.
+             *
+             * With -Dupload.dedupe=true the upload is skipped when
+             * the project already holds the same content, see
+             * UploadManifest, so every run after the first reuses
+             * the file uploaded by the first. The project's
+             * manifest entry is cleared when the project is closed.
+             * With -Dupload.verify=true a skip is confirmed against
+             * the content of the project file rather than its size.
              */
-            File upFile = new File("analytics/hipStar.dat");
-            InputStream is = new FileInputStream(upFile);
             DirectoryUploadOptions upOpts = new DirectoryUploadOptions();
             upOpts.filename = "hipStar.dat";
             upOpts.overwrite = true;
-            RProjectFile projFile = rProject.uploadFile(is, upOpts);
-
-            log.info("[  DATA UPLOAD   ] Uploaded data file input " +
-                "to working directory, [ RProjectFile ].");
-
-            /*
-             * Create a ProjectExecutionOptions instance
-             * to specify data inputs and output to the
-             * execution of the repository-managed R script.
-             *
-             * This options object can be used to pass standard
-             * execution model parameters on execution calls. All
-             * fields are optional.
-             *
-             * See the Standard Execution Model chapter in the
-             * Client Library Tutorial on the DeployR website for
-             * further details.
-             */
-            ProjectExecutionOptions options =
-                new ProjectExecutionOptions();
-
-
-            /*
-             * Request the retrieval of the "hip" data.frame and
-             * two vector objects from the workspace following the
-             * execution. The corresponding R objects are named as
-             * follows:
-             * 'hip', hipDim', 'hipNames'.
-             */
-            options.routputs =
-                Arrays.asList("hip", "hipDim", "hipNames");
+            ProjectUploader uploader = new ProjectUploader()
+                .setCompress(Boolean.getBoolean("upload.compress"))
+                .setVerifyContent(Boolean.getBoolean("upload.verify"));
+            if(Boolean.getBoolean("upload.dedupe")) {
+                manifest = UploadManifest.getDefault();
+                uploader.setManifest(manifest);
+            }
 
-            log.info("[  EXEC OPTION   ] DeployR-encoded R object request " +
-                "set on execution [ ProjectExecutionOptions.routputs ].");
+            int runs = Math.max(Integer.getInteger("upload.runs", 2), 1);
+            for(int run = 1; run <= runs; run++) {
 
-            /*
-             * Execute a public analytics Web service as an authenticated
-             * user based on a repository-managed R script:
-             * /testuser/example-data-io/dataIO.R
-             */
-            RProjectExecution exec =
-                    rProject.executeScript("dataIO.R",
-                            "example-data-io", "testuser", null, options);
+                UploadResult upload = uploader.upload(rProject,
+                            new File("analytics/hipStar.dat"), upOpts);
 
-            log.info("[   EXECUTION    ] Stateful R script " +
-                    "execution completed [ RProjectExecution ].");
+                log.info("[  DATA UPLOAD   ] Uploaded data file input " +
+                    "to working directory, run=" + run + ", sent=" +
+                    upload.getSentBytes() + ", saved=" +
+                    upload.getSavedBytes() + " bytes, skipped=" +
+                    upload.isSkipped() + " [ RProjectFile ].");
 
-            /*
-             * Retrieve the requested R object data encodings from
-             * the results of the script execution. 
-             *
-             * See the R Object Data Decoding chapter in the
-             * Client Library Tutorial on the DeployR website for
-             * further details.
-             */
-            List<RData> objects = exec.about().workspaceObjects;
-
-            for(RData rData : objects) {
-                if(rData instanceof RDataFrame) {
-                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
-                        "object output " + rData.getName() + " [ RDataFrame ].");
-                    List<RData> hipSubsetVal =
-                        ((RDataFrame) rData).getValue();
-                } else
-                if(rData instanceof RNumericVector) {
-                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
-                        "object output " + rData.getName() + " [ RNumericVector ].");
-                    List<Double> hipDimVal =
-                        ((RNumericVector) rData).getValue();
-                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
-                        "object " + rData.getName() +
-                        " value=" + hipDimVal);
-                } else
-                if(rData instanceof RStringVector) {
-                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
-                        "object output " + rData.getName() + " [ RStringVector ].");
-                    List<String> hipNamesVal =
-                        ((RStringVector) rData).getValue();
-                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
-                        "object " + rData.getName() +
-                        " value=" + hipNamesVal);
-                } else {
-                    log.info("Unexpected DeployR-encoded R object returned, " +
-                        "object name=" + rData.getName() + ", encoding=" +
-                                                        rData.getClass());
-                }
+                execute(rProject);
             }
 
         } catch (Exception ex) {
@@ -195,8 +146,12 @@ public class LocalDataInEncodedDataOut {
             try {
                 if (rProject != null) {
                     /*
-                     * Close rProject before application exits.
+                     * Close rProject before application exits, its
+                     * uploads are gone with it.
                      */
+                    if (manifest != null) {
+                        manifest.clear(rProject.about().id);
+                    }
                     rProject.close();
                 }
             } catch (Exception fex) { }
@@ -213,4 +168,94 @@ public class LocalDataInEncodedDataOut {
 
     }
 
+    /*
+     * Executes dataIO.R on the uploaded data file and logs the
+     * retrieved objects.
+     */
+    private static void execute(RProject rProject) throws Exception {
+
+        /*
+         * Create a ProjectExecutionOptions instance
+         * to specify data inputs and output to the
+         * execution of the repository-managed R script.
+         *
+         * This options object can be used to pass standard
+         * execution model parameters on execution calls. All
+         * fields are optional.
+         *
+         * See the Standard Execution Model chapter in the
+         * Client Library Tutorial on the DeployR website for
+         * further details.
+         */
+        ProjectExecutionOptions options =
+            new ProjectExecutionOptions();
+
+
+        /*
+         * Request the retrieval of the "hip" data.frame and
+         * two vector objects from the workspace following the
+         * execution. The corresponding R objects are named as
+         * follows:
+         * 'hip', hipDim', 'hipNames'.
+         */
+        options.routputs =
+            Arrays.asList("hip", "hipDim", "hipNames");
+
+        log.info("[  EXEC OPTION   ] DeployR-encoded R object request " +
+            "set on execution [ ProjectExecutionOptions.routputs ].");
+
+        /*
+         * Execute a public analytics Web service as an authenticated
+         * user based on a repository-managed R script:
+         * /testuser/example-data-io/dataIO.R
+         */
+        RProjectExecution exec =
+                rProject.executeScript("dataIO.R",
+                        "example-data-io", "testuser", null, options);
+
+        log.info("[   EXECUTION    ] Stateful R script " +
+                "execution completed [ RProjectExecution ].");
+
+        /*
+         * Retrieve the requested R object data encodings from
+         * the results of the script execution. 
+         *
+         * See the R Object Data Decoding chapter in the
+         * Client Library Tutorial on the DeployR website for
+         * further details.
+         */
+        List<RData> objects = exec.about().workspaceObjects;
+
+        for(RData rData : objects) {
+            if(rData instanceof RDataFrame) {
+                log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                    "object output " + rData.getName() + " [ RDataFrame ].");
+                List<RData> hipSubsetVal =
+                    ((RDataFrame) rData).getValue();
+            } else
+            if(rData instanceof RNumericVector) {
+                log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                    "object output " + rData.getName() + " [ RNumericVector ].");
+                List<Double> hipDimVal =
+                    ((RNumericVector) rData).getValue();
+                log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                    "object " + rData.getName() +
+                    " value=" + hipDimVal);
+            } else
+            if(rData instanceof RStringVector) {
+                log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                    "object output " + rData.getName() + " [ RStringVector ].");
+                List<String> hipNamesVal =
+                    ((RStringVector) rData).getValue();
+                log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                    "object " + rData.getName() +
+                    " value=" + hipNamesVal);
+            } else {
+                log.info("Unexpected DeployR-encoded R object returned, " +
+                    "object name=" + rData.getName() + ", encoding=" +
+                                                    rData.getClass());
+            }
+        }
+    }
+
 }
@@ -0,0 +1,176 @@
+/*
+ * PlannedDataInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import com.revo.deployr.client.example.data.io.plan.*;
+import java.util.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+public class PlannedDataInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(PlannedDataInEncodedDataOut.class);
+    /*
+     * Hipparcos star dataset URL endpoint.
+     */
+    private static String HIP_DAT_URL =
+        "http://astrostatistics.psu.edu/datasets/HIP_star.dat";
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RProject rProject = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Create a temporary project (R session).
+             */
+            rProject = rUser.createProject();
+
+            log.info("[  GO STATEFUL   ] Created stateful temporary " +
+                    "R session [ RProject ].");
+
+            /*
+             * Describe every copy of the Hipparcos dataset that
+             * dataIO.R can read: an encoded "hip" data.frame, the
+             * hipStar.dat file in the working directory, either
+             * uploaded or preloaded from the repository, the
+             * hipStar.rData workspace object file and the URL.
+             */
+            InputSource source = new InputSource("hip")
+                .setRepository("testuser", "example-data-io",
+                                "hipStar.dat", "hipStar.rData")
+                .setUrl("hipStarUrl", HIP_DAT_URL);
+            File localFile = new File("analytics/hipStar.dat");
+            if(localFile.isFile()) {
+                source.setLocalFile(localFile, "hipStar.dat")
+                      .setFrame(DatSnapshot.loadOrParse(localFile));
+            }
+
+            /*
+             * Let the planner pick the cheapest way to get the
+             * data into the R session, then apply it to the
+             * execution options.
+             */
+            InputPlanner planner = InputPlanner.getDefault();
+            InputPlan plan = planner.plan(source, rUser);
+
+            ProjectExecutionOptions options =
+                new ProjectExecutionOptions();
+            options.routputs = Arrays.asList("hipDim");
+
+            long start = System.currentTimeMillis();
+            planner.apply(plan, rProject, options);
+
+            log.info("[   DATA INPUT   ] Input set by planner, path=" +
+                                    plan.getPath() + " [ InputPlan ].");
+
+            /*
+             * Execute a public analytics Web service as an authenticated
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             */
+            RProjectExecution exec =
+                    rProject.executeScript("dataIO.R",
+                            "example-data-io", "testuser", null, options);
+
+            /*
+             * Feed the measured cost back to the planner.
+             */
+            planner.record(plan, System.currentTimeMillis() - start);
+
+            log.info("[   EXECUTION    ] Stateful R script " +
+                    "execution completed [ RProjectExecution ].");
+
+            List<RData> objects = exec.about().workspaceObjects;
+
+            for(RData rData : objects) {
+                if(rData instanceof RNumericVector) {
+                    List<Double> hipDimVal =
+                        ((RNumericVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipDimVal);
+                }
+            }
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (rProject != null) {
+                    /*
+                     * Close rProject before application exits.
+                     */
+                    rProject.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
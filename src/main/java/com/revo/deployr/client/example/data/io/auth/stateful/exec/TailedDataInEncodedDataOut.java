@@ -0,0 +1,187 @@
+/*
+ * TailedDataInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.exec;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.*;
+import java.io.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+public class TailedDataInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(TailedDataInEncodedDataOut.class);
+
+    /*
+     * Appends the rows sent on each tick to the "hip" data.frame
+     * held in the project workspace. A reset tick, the data file
+     * was truncated or replaced, starts "hip" over instead.
+     */
+    private static final String APPEND_CODE =
+        "hip <- if(exists('hip')) rbind(hip, hipDelta) else hipDelta; " +
+        "rm(hipDelta); hipDim <- dim(hip)";
+    private static final String RESET_CODE =
+        "hip <- hipDelta; rm(hipDelta); hipDim <- dim(hip)";
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RProject rProject = null;
+        DatTail tail = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Determine the data file to follow, how often to
+             * check it for appended rows and for how many ticks.
+             */
+            File dataFile = new File(System.getProperty("tail.file",
+                                            "analytics/hipStar.dat"));
+            long interval = Long.getLong("tail.interval.ms", 1000);
+            int ticks = Integer.getInteger("tail.ticks", 10);
+            log.info("[ CONFIGURATION  ] Following file=" + dataFile +
+                ", interval=" + interval + "ms, ticks=" + ticks);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Create a temporary project (R session). The one
+             * project is kept open for every tick, the "hip"
+             * data.frame grows in its workspace.
+             */
+            rProject = rUser.createProject();
+
+            log.info("[  GO STATEFUL   ] Created stateful temporary " +
+                    "R session [ RProject ].");
+
+            /*
+             * Follow the data file. Each poll parses only the rows
+             * appended since the previous poll, the first poll
+             * returns the rows already in the file.
+             */
+            tail = new DatTail(dataFile);
+            int generation = tail.getGeneration();
+
+            for(int tick = 0; tick < ticks; tick++) {
+
+                if(tick > 0) {
+                    Thread.sleep(interval);
+                }
+
+                DatFrame batch = tail.poll();
+                if(batch == null) {
+                    log.info("[   TAIL TICK    ] No rows appended, " +
+                        "offset=" + tail.getOffset());
+                    continue;
+                }
+
+                boolean reset = tail.getGeneration() != generation;
+                generation = tail.getGeneration();
+
+                /*
+                 * Send only the appended rows as a small encoded
+                 * data.frame input, appended to "hip" server-side.
+                 * The cost of a tick follows the rows appended, not
+                 * the size the dataset has grown to.
+                 */
+                ProjectExecutionOptions options =
+                    new ProjectExecutionOptions();
+                options.rinputs = Arrays.asList(batch.toDataFrame("hipDelta"));
+                options.routputs = Arrays.asList("hipDim");
+
+                RProjectExecution exec = rProject.executeCode(
+                            reset ? RESET_CODE : APPEND_CODE, options);
+
+                log.info("[   TAIL TICK    ] Sent " + batch.getRowCount() +
+                    " appended rows" + (reset ? " after file reset" : "") +
+                    ", offset=" + tail.getOffset() + " [ RProjectExecution ].");
+
+                List<RData> objects = exec.about().workspaceObjects;
+                for(RData rData : objects) {
+                    if(rData instanceof RNumericVector) {
+                        List<Double> hipDimVal =
+                            ((RNumericVector) rData).getValue();
+                        log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                            "object " + rData.getName() +
+                            " value=" + hipDimVal);
+                    }
+                }
+            }
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            IOUtils.closeQuietly(tail);
+            try {
+                if (rProject != null) {
+                    /*
+                     * Close rProject before application exits.
+                     */
+                    rProject.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
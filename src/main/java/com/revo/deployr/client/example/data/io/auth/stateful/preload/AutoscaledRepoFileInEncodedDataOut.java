@@ -0,0 +1,213 @@
+/*
+ * AutoscaledRepoFileInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.preload;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.pool.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * AutoscaledRepoFileInEncodedDataOut
+ *
+ * PooledRepoFileInEncodedDataOut run by several threads at once on
+ * a ProjectPool that a ProjectPoolAutoscaler resizes: the pool
+ * starts at the autoscaler minimum, grows while executions queue
+ * for a project and shrinks again once the work is done.
+ *
+ * Optional system properties, besides those of the autoscaler:
+ *   -Dexec.threads=n          concurrent executions (default 4)
+ *   -Dexec.runs=n             executions (default 24)
+ *   -Dexec.linger.ms=n        time to watch the pool shrink (default 0)
+ */
+public class AutoscaledRepoFileInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(AutoscaledRepoFileInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        ProjectPool pool = null;
+        ProjectPoolAutoscaler autoscaler = null;
+        ExecutorService threads = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Preload from the DeployR repository the following
+             * binary R object input file into every pooled project:
+             * /testuser/example-data-io/hipStar.rData
+             */
+            ProjectPreloadOptions preloadWorkspace =
+                                new ProjectPreloadOptions();
+            preloadWorkspace.filename = "hipStar.rData";
+            preloadWorkspace.directory = "example-data-io";
+            preloadWorkspace.author = "testuser";
+
+            ProjectPreloadSpec spec =
+                new ProjectPreloadSpec().setWorkspace(preloadWorkspace);
+
+            /*
+             * Start the pool at the autoscaler minimum, the
+             * autoscaler grows it from there.
+             */
+            pool = new ProjectPool(rUser, spec,
+                            Integer.getInteger("autoscale.min", 1));
+            int ready = pool.prewarm();
+            autoscaler = new ProjectPoolAutoscaler(pool);
+            autoscaler.start();
+
+            log.info("[  GO STATEFUL   ] Prewarmed stateful temporary " +
+                "R sessions [ ProjectPool ], ready=" + ready + ", " +
+                autoscaler + ".");
+
+            final ProjectPool projects = pool;
+            final AtomicInteger failures = new AtomicInteger();
+            int runs = Integer.getInteger("exec.runs", 24);
+            threads = Executors.newFixedThreadPool(
+                                Integer.getInteger("exec.threads", 4));
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            long start = System.currentTimeMillis();
+
+            for(int run = 1; run <= runs; run++) {
+                final int runNo = run;
+                futures.add(threads.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            execute(projects, runNo);
+                        } catch(Exception ex) {
+                            failures.incrementAndGet();
+                            log.warn("Execution failed, run=" + runNo +
+                                                        ", ex=" + ex);
+                        }
+                    }
+                }));
+            }
+            for(Future<?> future : futures) {
+                future.get();
+            }
+
+            log.info("[   EXECUTION    ] Stateful R script executions " +
+                "completed, runs=" + runs + ", failures=" + failures +
+                ", ms=" + (System.currentTimeMillis() - start) + ".");
+
+            Thread.sleep(Long.getLong("exec.linger.ms", 0));
+
+            log.info("[  GO STATEFUL   ] Autoscaled stateful R sessions " +
+                pool + ", last " + autoscaler.getMetrics() + ".");
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            if (threads != null) {
+                threads.shutdownNow();
+            }
+            if (autoscaler != null) {
+                autoscaler.stop();
+            }
+            try {
+                if (pool != null) {
+                    /*
+                     * Close the pooled projects before application exits.
+                     */
+                    pool.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+    /*
+     * Executes dataIO.R on a pooled project:
+     * /testuser/example-data-io/dataIO.R
+     */
+    private static void execute(ProjectPool pool, int run) throws Exception {
+
+        long start = System.currentTimeMillis();
+        PooledProject project = pool.borrow();
+        long borrowMillis = System.currentTimeMillis() - start;
+
+        try {
+
+            ProjectExecutionOptions execOpts = new ProjectExecutionOptions();
+            execOpts.routputs = Arrays.asList("hipDim", "hipNames");
+
+            project.getRProject().executeScript("dataIO.R",
+                "example-data-io", "testuser", null, execOpts);
+
+            log.info("[   EXECUTION    ] Stateful R script execution " +
+                "completed [ RProjectExecution ], run=" + run +
+                ", borrow ms=" + borrowMillis + ", total ms=" +
+                (System.currentTimeMillis() - start) + ".");
+
+            project.release();
+
+        } finally {
+            /*
+             * No-op after release, a project whose execution
+             * failed is closed.
+             */
+            project.invalidate();
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * PooledRepoFileInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.preload;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.pool.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * PooledRepoFileInEncodedDataOut
+ *
+ * RepoFileInEncodedDataOut run several times on projects borrowed
+ * from a ProjectPool, created and preloaded with hipStar.rData up
+ * front, instead of on a project created and preloaded per run.
+ *
+ * Optional system properties:
+ *   -Dproject.pool.size=n     projects kept preloaded (default 2)
+ *   -Dexec.runs=n             executions (default 6)
+ */
+public class PooledRepoFileInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(PooledRepoFileInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        ProjectPool pool = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            RUser rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Preload from the DeployR repository the following
+             * binary R object input file into every pooled project:
+             * /testuser/example-data-io/hipStar.rData
+             */
+            ProjectPreloadOptions preloadWorkspace =
+                                new ProjectPreloadOptions();
+            preloadWorkspace.filename = "hipStar.rData";
+            preloadWorkspace.directory = "example-data-io";
+            preloadWorkspace.author = "testuser";
+
+            ProjectPreloadSpec spec =
+                new ProjectPreloadSpec().setWorkspace(preloadWorkspace);
+
+            /*
+             * Create the pooled temporary projects (R sessions)
+             * and "pre-heat" their workspaces before any work
+             * arrives.
+             */
+            long start = System.currentTimeMillis();
+            pool = new ProjectPool(rUser, spec,
+                            Integer.getInteger("project.pool.size", 2));
+            int ready = pool.prewarm();
+
+            log.info("[  GO STATEFUL   ] Prewarmed stateful temporary " +
+                "R sessions [ ProjectPool ], ready=" + ready + ", ms=" +
+                (System.currentTimeMillis() - start) + ".");
+
+            int runs = Integer.getInteger("exec.runs", 6);
+            for(int run = 1; run <= runs; run++) {
+
+                start = System.currentTimeMillis();
+                PooledProject project = pool.borrow();
+                long borrowMillis = System.currentTimeMillis() - start;
+
+                try {
+
+                    /*
+                     * Request the retrieval of two vector objects
+                     * from the workspace following the execution.
+                     */
+                    ProjectExecutionOptions execOpts =
+                        new ProjectExecutionOptions();
+                    execOpts.routputs = Arrays.asList("hipDim", "hipNames");
+
+                    /*
+                     * Execute a public analytics Web service as an
+                     * authenticated user based on a repository-managed
+                     * R script:
+                     * /testuser/example-data-io/dataIO.R
+                     */
+                    RProjectExecution exec =
+                        project.getRProject().executeScript("dataIO.R",
+                            "example-data-io", "testuser", null, execOpts);
+
+                    log.info("[   EXECUTION    ] Stateful R script " +
+                        "execution completed [ RProjectExecution ], run=" +
+                        run + ", borrow ms=" + borrowMillis + ", total ms=" +
+                        (System.currentTimeMillis() - start) + ".");
+
+                    List<RData> objects = exec.about().workspaceObjects;
+                    for(RData rData : objects) {
+                        if(rData instanceof RNumericVector) {
+                            log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                                "object " + rData.getName() + " value=" +
+                                ((RNumericVector) rData).getValue());
+                        }
+                    }
+
+                    /*
+                     * Hand the project back, the pool restores its
+                     * workspace to the preloaded baseline.
+                     */
+                    project.release();
+
+                } finally {
+                    /*
+                     * No-op after release, a project whose execution
+                     * failed is closed.
+                     */
+                    project.invalidate();
+                }
+            }
+
+            log.info("[  GO STATEFUL   ] Pooled stateful R sessions " +
+                                                    pool + ".");
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (pool != null) {
+                    /*
+                     * Close the pooled projects before application exits.
+                     */
+                    pool.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
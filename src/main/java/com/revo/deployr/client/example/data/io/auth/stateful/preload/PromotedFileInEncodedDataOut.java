@@ -0,0 +1,192 @@
+/*
+ * PromotedFileInEncodedDataOut.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.auth.stateful.preload;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.upload.*;
+import java.util.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+public class PromotedFileInEncodedDataOut {
+
+    private static Logger log = Logger.getLogger(PromotedFileInEncodedDataOut.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RUser rUser = null;
+        RProject rProject = null;
+        RepositoryContentStore store = RepositoryContentStore.getDefault();
+        ContentRef ref = null;
+
+        try {
+
+            /*
+             * Determine DeployR server endpoint.
+             */
+            String endpoint = System.getProperty("endpoint");
+            log.info("[ CONFIGURATION  ] Using endpoint=" + endpoint);
+
+            /*
+             * Establish RClient connection to DeployR server.
+             *
+             * An RClient connection is the mandatory starting
+             * point for any application using the client library.
+             */
+            rClient = RClientFactory.createClient(endpoint);
+
+            log.info("[   CONNECTION   ] Established anonymous " +
+                    "connection [ RClient ].");
+
+            /*
+             * Build a basic authentication token.
+             */
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+
+            /*
+             * Establish an authenticated handle with the DeployR
+             * server, rUser. Following this call the rClient
+             * connection is operating as an authenticated connection
+             * and all calls on rClient inherit the access permissions
+             * of the authenticated user, rUser.
+             */
+            rUser = rClient.login(rAuth);
+            log.info("[ AUTHENTICATION ] Upgraded to authenticated " +
+                    "connection [ RUser ].");
+
+            /*
+             * Promote the local data file into the repository. The
+             * first run uploads it under its content hash, every
+             * later run with the same content finds it there and
+             * sends nothing.
+             */
+            ref = store.promote(rUser, new File("analytics/hipStar.dat"));
+
+            log.info("[  DATA PROMOTE  ] Local data file available in " +
+                "repository, uploaded=" + ref.isUploaded() +
+                " [ ContentRef ].");
+
+            /*
+             * Create a ProjectCreationOptions instance
+             * to specify data inputs that "pre-heat" the R session
+             * workspace or working directory for your project.
+             */
+            ProjectCreationOptions creationOpts =
+                new ProjectCreationOptions();
+            creationOpts.preloadDirectory = ref.toPreloadOptions();
+
+            log.info("[ PRELOAD INPUT  ] Repository data file input " +
+                "set on project creation, [ ProjectCreationOptions.preloadDirectory ].");
+
+            /*
+             * Create a temporary project (R session) passing a
+             * ProjectCreationOptions to "pre-heat" data into the
+             * working directory.
+             */
+            rProject = rUser.createProject(creationOpts);
+
+            log.info("[  GO STATEFUL   ] Created stateful temporary " +
+                    "R session [ RProject ].");
+
+            /*
+             * The preloaded file carries its content-addressed
+             * name, give it the name dataIO.R reads.
+             */
+            rProject.executeCode(ref.toRenameCode("hipStar.dat"));
+
+            /*
+             * Request the retrieval of two vector objects from the
+             * workspace following the execution:
+             * 'hipDim', 'hipNames'.
+             */
+            ProjectExecutionOptions execOpts =
+                new ProjectExecutionOptions();
+            execOpts.routputs = Arrays.asList("hipDim", "hipNames");
+
+            log.info("[  EXEC OPTION   ] DeployR-encoded R object request " +
+                "set on execution [ ProjectExecutionOptions.routputs ].");
+
+            /*
+             * Execute a public analytics Web service as an authenticated
+             * user based on a repository-managed R script:
+             * /testuser/example-data-io/dataIO.R
+             */
+            RProjectExecution exec =
+                    rProject.executeScript("dataIO.R",
+                            "example-data-io", "testuser", null, execOpts);
+
+            log.info("[   EXECUTION    ] Stateful R script " +
+                    "execution completed [ RProjectExecution ].");
+
+            List<RData> objects = exec.about().workspaceObjects;
+
+            for(RData rData : objects) {
+                if(rData instanceof RNumericVector) {
+                    List<Double> hipDimVal =
+                        ((RNumericVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipDimVal);
+                } else
+                if(rData instanceof RStringVector) {
+                    List<String> hipNamesVal =
+                        ((RStringVector) rData).getValue();
+                    log.info("[  DATA OUTPUT   ] Retrieved DeployR-encoded R " +
+                        "object " + rData.getName() +
+                        " value=" + hipNamesVal);
+                }
+            }
+
+        } catch (Exception ex) {
+            log.warn("Unexpected runtime exception=" + ex);
+        } finally {
+            try {
+                if (rProject != null) {
+                    /*
+                     * Close rProject before application exits.
+                     */
+                    rProject.close();
+                }
+            } catch (Exception fex) { }
+            try {
+                if (ref != null) {
+                    /*
+                     * Drop this run's reference, the repository copy
+                     * stays for the retention period.
+                     */
+                    store.release(rUser, ref);
+                }
+            } catch (Exception fex) { }
+            try {
+                if (rClient != null) {
+                    /*
+                     * Release rClient connection before application exits.
+                     */
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+
+    }
+
+}
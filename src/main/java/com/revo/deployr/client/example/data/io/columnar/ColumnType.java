@@ -0,0 +1,45 @@
+/*
+ * ColumnType.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+/*
+ * ColumnType
+ *
+ * Storage type of a DatColumn, mirroring the R vector type that
+ * read.table / type.convert would choose for the same cells.
+ */
+public enum ColumnType {
+
+    LOGICAL, INTEGER, DOUBLE, STRING;
+
+    /*
+     * Returns the narrowest type able to hold cells of both
+     * types: INTEGER and DOUBLE widen to DOUBLE, any other
+     * mix of distinct types widens to STRING.
+     */
+    public ColumnType join(ColumnType other) {
+        if(this == other) {
+            return this;
+        }
+        if((this == INTEGER && other == DOUBLE) ||
+                                (this == DOUBLE && other == INTEGER)) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    public boolean isNumeric() {
+        return this == INTEGER || this == DOUBLE;
+    }
+
+}
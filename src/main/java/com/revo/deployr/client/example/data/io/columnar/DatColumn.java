@@ -0,0 +1,714 @@
+/*
+ * DatColumn.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.io.*;
+
+/*
+ * DatColumn
+ *
+ * Growable primitive column buffer filled directly from the
+ * bytes of a whitespace-delimited (.dat) data file.
+ *
+ * Each column has a ColumnType. LOGICAL and INTEGER cells are
+ * held in an int[], DOUBLE cells in a double[] and only STRING
+ * cells are held as String objects. A column is widened the
+ * first time a cell does not fit its current type, following
+ * the same rules as R's type.convert: INTEGER widens to DOUBLE,
+ * any other mix widens to STRING. Missing cells are stored using
+ * the R NA representations.
+ *
+ * Widening numeric cells to STRING formats the values already
+ * parsed, so their original text (for example trailing zeros) is
+ * not preserved. Declare the type up front with a DatSchema when
+ * the exact text of such columns matters.
+ */
+public class DatColumn {
+
+    /*
+     * R NA_integer_ and NA_real_ representations.
+     */
+    public static final int NA_INTEGER = Integer.MIN_VALUE;
+    public static final long NA_REAL_BITS = 0x7FF00000000007A2L;
+    public static final double NA_REAL =
+        Double.longBitsToDouble(NA_REAL_BITS);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+    private static final int TOKEN_NA = 0;
+    private static final int TOKEN_LOGICAL = 1;
+    private static final int TOKEN_INTEGER = 2;
+    private static final int TOKEN_DOUBLE = 3;
+    private static final int TOKEN_STRING = 4;
+
+    private final String name;
+    private ColumnType type;
+    private final boolean declared;
+    private int[] ints;
+    private double[] doubles;
+    private String[] strings;
+    private int size;
+    private int nonMissing;
+
+    /*
+     * Token scan results, valid after a call to scanToken.
+     */
+    private int scannedInt;
+    private double scannedDouble;
+
+    public DatColumn(String name) {
+        this(name, INITIAL_CAPACITY);
+    }
+
+    /*
+     * Creates a column whose type is inferred from its cells.
+     * Until a non-missing cell is appended the column reports
+     * LOGICAL, as R does for a column of NA.
+     */
+    public DatColumn(String name, int capacity) {
+        this(name, ColumnType.LOGICAL, capacity, false);
+    }
+
+    /*
+     * Creates a column of a declared type. Cells that do not
+     * fit the declared type still widen the column.
+     */
+    public DatColumn(String name, ColumnType type, int capacity) {
+        this(name, type, capacity, true);
+    }
+
+    private DatColumn(String name, ColumnType type, int capacity,
+                                                    boolean declared) {
+        this.name = name;
+        this.type = type;
+        this.declared = declared;
+        allocate(type, Math.max(capacity, 16));
+    }
+
+    /*
+     * Wraps already decoded storage, used by DatSnapshot. The
+     * array matching type must hold at least size cells.
+     */
+    DatColumn(String name, ColumnType type, int[] ints, double[] doubles,
+              String[] strings, int size, int nonMissing) {
+        this.name = name;
+        this.type = type;
+        this.declared = true;
+        this.ints = ints;
+        this.doubles = doubles;
+        this.strings = strings;
+        this.size = size;
+        this.nonMissing = nonMissing;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ColumnType getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Number of cells that are not NA.
+     */
+    public int getNonMissingCount() {
+        return nonMissing;
+    }
+
+    public boolean isInteger() {
+        return type == ColumnType.INTEGER;
+    }
+
+    public boolean isNA(int row) {
+        switch(type) {
+            case DOUBLE:
+                return Double.doubleToRawLongBits(doubles[row]) == NA_REAL_BITS;
+            case STRING:
+                return strings[row] == null;
+            default:
+                return ints[row] == NA_INTEGER;
+        }
+    }
+
+    public int getInt(int row) {
+        switch(type) {
+            case DOUBLE:
+                return isNA(row) ? NA_INTEGER : (int) doubles[row];
+            case STRING:
+                throw new IllegalStateException("Column " + name +
+                                            " is of type STRING.");
+            default:
+                return ints[row];
+        }
+    }
+
+    public double getDouble(int row) {
+        switch(type) {
+            case DOUBLE:
+                return doubles[row];
+            case STRING:
+                throw new IllegalStateException("Column " + name +
+                                            " is of type STRING.");
+            default:
+                int v = ints[row];
+                return v == NA_INTEGER ? NA_REAL : v;
+        }
+    }
+
+    public boolean getLogical(int row) {
+        return getInt(row) != 0;
+    }
+
+    /*
+     * Returns the cell as text, null for NA.
+     */
+    public String getString(int row) {
+        if(isNA(row)) {
+            return null;
+        }
+        switch(type) {
+            case LOGICAL:
+                return ints[row] != 0 ? "TRUE" : "FALSE";
+            case INTEGER:
+                return Integer.toString(ints[row]);
+            case DOUBLE:
+                return formatDouble(doubles[row]);
+            default:
+                return strings[row];
+        }
+    }
+
+    public void appendNA() {
+        ensureCapacity(size + 1);
+        switch(type) {
+            case DOUBLE:
+                doubles[size++] = NA_REAL;
+                break;
+            case STRING:
+                strings[size++] = null;
+                break;
+            default:
+                ints[size++] = NA_INTEGER;
+        }
+    }
+
+    public void appendLogical(boolean value) {
+        widen(ColumnType.LOGICAL);
+        if(type == ColumnType.STRING) {
+            appendString(value ? "TRUE" : "FALSE");
+            return;
+        }
+        ensureCapacity(size + 1);
+        ints[size++] = value ? 1 : 0;
+        nonMissing++;
+    }
+
+    public void appendInt(int value) {
+        widen(ColumnType.INTEGER);
+        switch(type) {
+            case DOUBLE:
+                appendDouble(value);
+                return;
+            case STRING:
+                appendString(Integer.toString(value));
+                return;
+            default:
+                ensureCapacity(size + 1);
+                ints[size++] = value;
+                nonMissing++;
+        }
+    }
+
+    public void appendDouble(double value) {
+        widen(ColumnType.DOUBLE);
+        if(type == ColumnType.STRING) {
+            appendString(formatDouble(value));
+            return;
+        }
+        ensureCapacity(size + 1);
+        doubles[size++] = value;
+        nonMissing++;
+    }
+
+    public void appendString(String value) {
+        if(value == null) {
+            appendNA();
+            return;
+        }
+        widen(ColumnType.STRING);
+        ensureCapacity(size + 1);
+        strings[size++] = value;
+        nonMissing++;
+    }
+
+    /*
+     * appendColumn
+     *
+     * Appends every cell of other to this column, widening the
+     * column when other holds cells of a different type. Used
+     * to merge columns parsed from consecutive chunks.
+     */
+    public void appendColumn(DatColumn other) {
+
+        if(other.nonMissing > 0) {
+            widen(other.type);
+        }
+
+        int required = size + other.size;
+        ensureCapacity(required);
+
+        if(type == other.type && type != ColumnType.STRING) {
+            if(type == ColumnType.DOUBLE) {
+                System.arraycopy(other.doubles, 0, doubles, size, other.size);
+            } else {
+                System.arraycopy(other.ints, 0, ints, size, other.size);
+            }
+        } else {
+            for(int i = 0; i < other.size; i++) {
+                switch(type) {
+                    case DOUBLE:
+                        doubles[size + i] = other.isNA(i) ? NA_REAL
+                                                : other.getDouble(i);
+                        break;
+                    case STRING:
+                        strings[size + i] = other.getString(i);
+                        break;
+                    default:
+                        ints[size + i] = NA_INTEGER;
+                }
+            }
+        }
+        size = required;
+        nonMissing += other.nonMissing;
+    }
+
+    /*
+     * appendToken
+     *
+     * Parses the cell held in buf[off, off+len) and appends it
+     * to the column without creating an intermediate String,
+     * except for STRING columns. Integral cells stay on the int[]
+     * path, decimal cells are converted using an exact fast path
+     * that yields the same bits as Double.parseDouble, which
+     * remains the fallback for anything the fast path can not
+     * handle exactly.
+     */
+    public void appendToken(byte[] buf, int off, int len) {
+
+        if(type == ColumnType.STRING) {
+            if(isNAToken(buf, off, len)) {
+                appendNA();
+            } else {
+                appendString(decode(buf, off, len));
+            }
+            return;
+        }
+
+        switch(scanToken(buf, off, len)) {
+            case TOKEN_NA:
+                appendNA();
+                break;
+            case TOKEN_LOGICAL:
+                if(type.isNumeric() && nonMissing > 0) {
+                    appendString(decode(buf, off, len));
+                } else {
+                    appendLogical(scannedInt != 0);
+                }
+                break;
+            case TOKEN_INTEGER:
+                if(type == ColumnType.LOGICAL && nonMissing > 0) {
+                    appendString(decode(buf, off, len));
+                } else {
+                    appendInt(scannedInt);
+                }
+                break;
+            case TOKEN_DOUBLE:
+                if(type == ColumnType.LOGICAL && nonMissing > 0) {
+                    appendString(decode(buf, off, len));
+                } else {
+                    appendDouble(scannedDouble);
+                }
+                break;
+            default:
+                appendString(decode(buf, off, len));
+        }
+    }
+
+    /*
+     * asDoubleList
+     *
+     * Returns a read-only List<Double> view over a numeric column
+     * suitable for RDataFactory.createNumericVector. Values are
+     * boxed one at a time as the encoder walks the list, so no
+     * boxed copy of the column is ever held in memory. Missing
+     * cells are exposed as null, which encodes as R NA.
+     */
+    public List<Double> asDoubleList() {
+        if(type == ColumnType.STRING) {
+            throw new IllegalStateException("Column " + name +
+                                        " is of type STRING.");
+        }
+        return new AbstractList<Double>() {
+            public Double get(int index) {
+                checkIndex(index);
+                return isNA(index) ? null : Double.valueOf(getDouble(index));
+            }
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /*
+     * Read-only List<Boolean> view for RDataFactory.createBooleanVector.
+     */
+    public List<Boolean> asBooleanList() {
+        if(type != ColumnType.LOGICAL) {
+            throw new IllegalStateException("Column " + name +
+                                    " is of type " + type + ".");
+        }
+        return new AbstractList<Boolean>() {
+            public Boolean get(int index) {
+                checkIndex(index);
+                return isNA(index) ? null : Boolean.valueOf(ints[index] != 0);
+            }
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /*
+     * Read-only List<String> view for RDataFactory.createStringVector.
+     */
+    public List<String> asStringList() {
+        return new AbstractList<String>() {
+            public String get(int index) {
+                checkIndex(index);
+                return getString(index);
+            }
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /*
+     * Widens the column so it can hold cells of tokenType. An
+     * inferred column holding only NA cells takes tokenType as is.
+     */
+    private void widen(ColumnType tokenType) {
+
+        ColumnType target = nonMissing == 0 && !declared ? tokenType :
+                                                type.join(tokenType);
+        if(target == type) {
+            return;
+        }
+
+        int capacity = Math.max(capacity(), 16);
+        ColumnType from = type;
+        int[] fromInts = ints;
+        double[] fromDoubles = doubles;
+        String[] fromStrings = strings;
+
+        allocate(target, capacity);
+        type = target;
+
+        for(int i = 0; i < size; i++) {
+            boolean na;
+            switch(from) {
+                case DOUBLE:
+                    na = Double.doubleToRawLongBits(fromDoubles[i]) ==
+                                                        NA_REAL_BITS;
+                    break;
+                case STRING:
+                    na = fromStrings[i] == null;
+                    break;
+                default:
+                    na = fromInts[i] == NA_INTEGER;
+            }
+            switch(target) {
+                case DOUBLE:
+                    doubles[i] = na ? NA_REAL :
+                        (from == ColumnType.DOUBLE ? fromDoubles[i]
+                                                   : fromInts[i]);
+                    break;
+                case STRING:
+                    if(na) {
+                        strings[i] = null;
+                    } else
+                    if(from == ColumnType.LOGICAL) {
+                        strings[i] = fromInts[i] != 0 ? "TRUE" : "FALSE";
+                    } else
+                    if(from == ColumnType.INTEGER) {
+                        strings[i] = Integer.toString(fromInts[i]);
+                    } else {
+                        strings[i] = formatDouble(fromDoubles[i]);
+                    }
+                    break;
+                default:
+                    ints[i] = NA_INTEGER;
+            }
+        }
+    }
+
+    /*
+     * scanToken
+     *
+     * Classifies a cell and, for LOGICAL, INTEGER and DOUBLE
+     * cells, leaves its value in scannedInt or scannedDouble.
+     * Numbers follow [+-]?(d+[.d*]|.d+)([eE][+-]?d+)? as well as
+     * R's Inf, -Inf and NaN.
+     */
+    private int scanToken(byte[] buf, int off, int len) {
+
+        if(isNAToken(buf, off, len)) {
+            return TOKEN_NA;
+        }
+
+        int logical = parseLogical(buf, off, len);
+        if(logical >= 0) {
+            scannedInt = logical;
+            return TOKEN_LOGICAL;
+        }
+
+        int i = off;
+        int end = off + len;
+        boolean negative = false;
+
+        if(i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        if(matches(buf, i, end, "Inf")) {
+            scannedDouble = negative ? Double.NEGATIVE_INFINITY
+                                     : Double.POSITIVE_INFINITY;
+            return TOKEN_DOUBLE;
+        }
+        if(matches(buf, i, end, "NaN")) {
+            scannedDouble = Double.NaN;
+            return TOKEN_DOUBLE;
+        }
+
+        long mantissa = 0;
+        int significant = 0;
+        int digits = 0;
+        int exp10 = 0;
+        boolean integral = true;
+        boolean exact = true;
+
+        for(; i < end; i++) {
+            int d = buf[i] - '0';
+            if(d < 0 || d > 9) {
+                break;
+            }
+            digits++;
+            if(mantissa != 0 || d != 0) {
+                significant++;
+            }
+            if(significant > 18) {
+                exact = false;
+            } else {
+                mantissa = mantissa * 10 + d;
+            }
+        }
+
+        if(i < end && buf[i] == '.') {
+            integral = false;
+            for(i++; i < end; i++) {
+                int d = buf[i] - '0';
+                if(d < 0 || d > 9) {
+                    break;
+                }
+                digits++;
+                if(mantissa != 0 || d != 0) {
+                    significant++;
+                }
+                if(significant > 18) {
+                    exact = false;
+                } else {
+                    mantissa = mantissa * 10 + d;
+                    exp10--;
+                }
+            }
+        }
+
+        if(digits == 0) {
+            return TOKEN_STRING;
+        }
+
+        if(i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            integral = false;
+            i++;
+            boolean expNegative = false;
+            if(i < end && (buf[i] == '-' || buf[i] == '+')) {
+                expNegative = buf[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            int expDigits = 0;
+            for(; i < end; i++) {
+                int d = buf[i] - '0';
+                if(d < 0 || d > 9) {
+                    break;
+                }
+                if(exp < 100000) {
+                    exp = exp * 10 + d;
+                }
+                expDigits++;
+            }
+            if(expDigits == 0) {
+                return TOKEN_STRING;
+            }
+            exp10 += expNegative ? -exp : exp;
+        }
+
+        if(i != end) {
+            return TOKEN_STRING;
+        }
+
+        if(integral && exact && mantissa <= Integer.MAX_VALUE &&
+                                    !(negative && mantissa == 0)) {
+            scannedInt = negative ? (int) -mantissa : (int) mantissa;
+            return TOKEN_INTEGER;
+        }
+
+        if(exact && mantissa == 0) {
+            scannedDouble = negative ? -0.0 : 0.0;
+        } else
+        if(exact && mantissa < (1L << 53) && exp10 >= -22 && exp10 <= 22) {
+            double value = exp10 < 0 ? mantissa / POW10[-exp10]
+                                     : mantissa * POW10[exp10];
+            scannedDouble = negative ? -value : value;
+        } else {
+            scannedDouble = Double.parseDouble(decode(buf, off, len));
+        }
+        return TOKEN_DOUBLE;
+    }
+
+    private void allocate(ColumnType target, int capacity) {
+        ints = null;
+        doubles = null;
+        strings = null;
+        switch(target) {
+            case DOUBLE:
+                doubles = new double[capacity];
+                break;
+            case STRING:
+                strings = new String[capacity];
+                break;
+            default:
+                ints = new int[capacity];
+        }
+    }
+
+    private int capacity() {
+        switch(type) {
+            case DOUBLE:
+                return doubles.length;
+            case STRING:
+                return strings.length;
+            default:
+                return ints.length;
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if(required <= capacity()) {
+            return;
+        }
+        int grown = Math.max(required, size + (size >> 1) + 16);
+        switch(type) {
+            case DOUBLE:
+                doubles = Arrays.copyOf(doubles, grown);
+                break;
+            case STRING:
+                strings = Arrays.copyOf(strings, grown);
+                break;
+            default:
+                ints = Arrays.copyOf(ints, grown);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index +
+                                                ", size=" + size);
+        }
+    }
+
+    private static boolean isNAToken(byte[] buf, int off, int len) {
+        return len == 2 && buf[off] == 'N' && buf[off + 1] == 'A';
+    }
+
+    /*
+     * Returns 1 or 0 for the logical literals accepted by R's
+     * type.convert, -1 for any other cell.
+     */
+    private static int parseLogical(byte[] buf, int off, int len) {
+        int end = off + len;
+        if(matches(buf, off, end, "T") || matches(buf, off, end, "TRUE") ||
+                matches(buf, off, end, "true") ||
+                                    matches(buf, off, end, "True")) {
+            return 1;
+        }
+        if(matches(buf, off, end, "F") || matches(buf, off, end, "FALSE") ||
+                matches(buf, off, end, "false") ||
+                                    matches(buf, off, end, "False")) {
+            return 0;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] buf, int from, int end,
+                                                        String literal) {
+        if(end - from != literal.length()) {
+            return false;
+        }
+        for(int i = 0; i < literal.length(); i++) {
+            if(buf[from + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String formatDouble(double value) {
+        if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String decode(byte[] buf, int off, int len) {
+        try {
+            return new String(buf, off, len, "UTF-8");
+        } catch(UnsupportedEncodingException ueex) {
+            throw new IllegalStateException("UTF-8 unavailable.");
+        }
+    }
+
+}
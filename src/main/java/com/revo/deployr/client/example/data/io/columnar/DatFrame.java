@@ -0,0 +1,111 @@
+/*
+ * DatFrame.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import java.util.*;
+
+/*
+ * DatFrame
+ *
+ * Columnar result of parsing a whitespace-delimited (.dat)
+ * data file, one typed DatColumn per header column.
+ */
+public class DatFrame {
+
+    private final List<DatColumn> columns;
+    private final int rowCount;
+
+    public DatFrame(List<DatColumn> columns, int rowCount) {
+        this.columns = Collections.unmodifiableList(columns);
+        this.rowCount = rowCount;
+    }
+
+    public List<DatColumn> getColumns() {
+        return columns;
+    }
+
+    public DatColumn getColumn(String name) {
+        for(DatColumn column : columns) {
+            if(column.getName().equals(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    public List<String> getColumnNames() {
+        List<String> names = new ArrayList<String>(columns.size());
+        for(DatColumn column : columns) {
+            names.add(column.getName());
+        }
+        return names;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /*
+     * toDataFrame
+     *
+     * Encodes the frame as a DeployR data.frame input. Each
+     * column is handed to the RDataFactory vector factory that
+     * matches its ColumnType, as a list view over its buffer.
+     */
+    public RData toDataFrame(String name) {
+        return toDataFrame(name, 0, rowCount);
+    }
+
+    /*
+     * Encodes rows [fromRow, toRow) as a DeployR data.frame
+     * input, the column views cover only those rows.
+     */
+    public RData toDataFrame(String name, int fromRow, int toRow) {
+
+        if(fromRow < 0 || toRow > rowCount || fromRow > toRow) {
+            throw new IndexOutOfBoundsException("fromRow=" + fromRow +
+                                ", toRow=" + toRow + ", rows=" + rowCount);
+        }
+
+        List<RData> dfValues = new ArrayList<RData>(columns.size());
+
+        for(DatColumn column : columns) {
+            dfValues.add(toVector(column, fromRow, toRow));
+        }
+
+        return RDataFactory.createDataFrame(name, dfValues);
+    }
+
+    /*
+     * toVector
+     *
+     * The client library has no integer vector encoding, INTEGER
+     * columns are sent as numeric vectors of whole values.
+     */
+    static RData toVector(DatColumn column, int fromRow, int toRow) {
+        switch(column.getType()) {
+            case LOGICAL:
+                return RDataFactory.createBooleanVector(column.getName(),
+                                column.asBooleanList().subList(fromRow, toRow));
+            case STRING:
+                return RDataFactory.createStringVector(column.getName(),
+                                column.asStringList().subList(fromRow, toRow));
+            default:
+                return RDataFactory.createNumericVector(column.getName(),
+                                column.asDoubleList().subList(fromRow, toRow));
+        }
+    }
+
+}
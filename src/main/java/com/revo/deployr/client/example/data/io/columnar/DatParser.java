@@ -0,0 +1,101 @@
+/*
+ * DatParser.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+
+/*
+ * DatParser
+ *
+ * Streaming tokenizer for whitespace-delimited (.dat) data files
+ * with a single header row, such as the Hipparcos star dataset.
+ *
+ * Bytes are read in large blocks and each cell is parsed straight
+ * into its DatColumn buffer. No per-row String, regex split or
+ * boxed value is created. Column types are inferred from the
+ * cells, or declared up front with a DatSchema. Short rows are
+ * padded with NA, in the same way R's read.table(fill=T) treats
+ * them, and blank lines are skipped.
+ */
+public class DatParser {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private int expectedRows = 1024;
+    private DatSchema schema;
+    private Collection<String> projection;
+
+    /*
+     * Hint for the initial capacity of each column buffer,
+     * avoids repeated growth when the row count is known.
+     */
+    public DatParser setExpectedRows(int expectedRows) {
+        this.expectedRows = expectedRows;
+        return this;
+    }
+
+    /*
+     * Declares the column types up front, see DatSchema. Without
+     * a schema every column type is inferred from its cells.
+     */
+    public DatParser setSchema(DatSchema schema) {
+        this.schema = schema;
+        return this;
+    }
+
+    /*
+     * Restricts the parse to the named columns. Cells of other
+     * columns are skipped while tokenizing and never stored.
+     */
+    public DatParser setProjection(Collection<String> projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    public DatFrame parse(InputStream is) throws IOException {
+
+        DatTokenizer tokenizer = new DatTokenizer(expectedRows);
+        tokenizer.setSchema(schema);
+        tokenizer.setProjection(projection);
+        byte[] block = new byte[READ_BUFFER_SIZE];
+
+        int read;
+        while((read = is.read(block)) != -1) {
+            tokenizer.feed(block, 0, read);
+        }
+
+        return tokenizer.finish();
+    }
+
+    /*
+     * Parses the bytes between position and limit of each buffer,
+     * in order, as one continuous data file. The buffers are
+     * scanned in place, typically they are the mapped segments
+     * of a MappedDatFile.
+     */
+    public DatFrame parse(List<ByteBuffer> buffers) throws IOException {
+
+        DatTokenizer tokenizer = new DatTokenizer(expectedRows);
+        tokenizer.setSchema(schema);
+        tokenizer.setProjection(projection);
+
+        for(ByteBuffer buffer : buffers) {
+            tokenizer.feed(buffer);
+        }
+
+        return tokenizer.finish();
+    }
+
+}
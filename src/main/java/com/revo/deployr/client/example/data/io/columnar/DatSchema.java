@@ -0,0 +1,124 @@
+/*
+ * DatSchema.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+
+/*
+ * DatSchema
+ *
+ * Column names and ColumnTypes of a whitespace-delimited (.dat)
+ * data file.
+ *
+ * A schema is inferred from the first sampleRows data rows, or
+ * from every row when sampleRows is ALL_ROWS, and then handed to
+ * DatParser so each column is parsed straight into its final
+ * storage. A sampled schema is a starting point only: cells
+ * beyond the sample that do not fit still widen their column.
+ * A null type leaves the column to be inferred while parsing.
+ */
+public class DatSchema {
+
+    public static final int ALL_ROWS = Integer.MAX_VALUE;
+    public static final int DEFAULT_SAMPLE_ROWS = 1000;
+
+    private final List<String> names;
+    private final List<ColumnType> types;
+
+    public DatSchema(List<String> names, List<ColumnType> types) {
+        if(names.size() != types.size()) {
+            throw new IllegalArgumentException("Schema has " + names.size() +
+                                " names but " + types.size() + " types.");
+        }
+        this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+        this.types = Collections.unmodifiableList(new ArrayList<ColumnType>(types));
+    }
+
+    /*
+     * Returns the schema of a parsed frame. Columns holding no
+     * cells other than NA are left undeclared (null type) so
+     * they are still inferred from later cells.
+     */
+    public static DatSchema of(DatFrame frame) {
+        List<ColumnType> types = new ArrayList<ColumnType>();
+        for(DatColumn column : frame.getColumns()) {
+            types.add(column.getNonMissingCount() > 0 ?
+                                        column.getType() : null);
+        }
+        return new DatSchema(frame.getColumnNames(), types);
+    }
+
+    /*
+     * Infers a schema from the start of is. The stream is left
+     * partially consumed, open a fresh stream for the parse.
+     */
+    public static DatSchema infer(InputStream is, int sampleRows)
+                                                    throws IOException {
+        DatTokenizer tokenizer = new DatTokenizer(capacityFor(sampleRows));
+        tokenizer.setMaxRows(sampleRows);
+        byte[] block = new byte[8 * 1024];
+        int read;
+        while(!tokenizer.isComplete() && (read = is.read(block)) != -1) {
+            tokenizer.feed(block, 0, read);
+        }
+        return of(tokenizer.finish());
+    }
+
+    public static DatSchema infer(List<ByteBuffer> buffers, int sampleRows)
+                                                    throws IOException {
+        DatTokenizer tokenizer = new DatTokenizer(capacityFor(sampleRows));
+        tokenizer.setMaxRows(sampleRows);
+        for(ByteBuffer buffer : buffers) {
+            if(tokenizer.isComplete()) {
+                break;
+            }
+            tokenizer.feed(buffer.duplicate());
+        }
+        return of(tokenizer.finish());
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public List<ColumnType> getTypes() {
+        return types;
+    }
+
+    /*
+     * Returns the type declared for name, or null when the
+     * schema has no such column or leaves it undeclared.
+     */
+    public ColumnType getType(String name) {
+        int index = names.indexOf(name);
+        return index < 0 ? null : types.get(index);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DatSchema[");
+        for(int i = 0; i < names.size(); i++) {
+            if(i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names.get(i)).append(':').append(types.get(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static int capacityFor(int sampleRows) {
+        return Math.min(Math.max(sampleRows, 16), 64 * 1024);
+    }
+
+}
@@ -0,0 +1,489 @@
+/*
+ * DatSnapshot.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * DatSnapshot
+ *
+ * Binary columnar snapshot of a parsed DatFrame, written next to
+ * its source data file as <source>.snapshot so later runs can
+ * skip parsing the text altogether.
+ *
+ * Layout, all values little-endian:
+ *
+ *   header   magic "DATSNAP1", version, source size, source
+ *            mtime, source hash, row count, column count
+ *   columns  per column: name, type, non-missing count, block
+ *            offset, block length, block CRC32
+ *   crc      CRC32 of the header and column descriptors
+ *   blocks   per column: int32 cells (LOGICAL, INTEGER),
+ *            float64 cells (DOUBLE) or int32 length prefixed
+ *            UTF-8 cells, length -1 for NA (STRING)
+ *
+ * A snapshot is only used when the source file size, last
+ * modified time and hash still match; the hash covers the first
+ * and last 64KB of the source so validation stays cheap for
+ * multi-gigabyte files. Any mismatch or checksum failure causes
+ * the snapshot to be ignored and rebuilt.
+ *
+ * Column blocks are independent, a projected load only maps and
+ * decodes the blocks of the selected columns.
+ */
+public class DatSnapshot {
+
+    private static Logger log = Logger.getLogger(DatSnapshot.class);
+
+    public static final String SUFFIX = ".snapshot";
+
+    private static final byte[] MAGIC = { 'D', 'A', 'T', 'S', 'N', 'A', 'P', '1' };
+    private static final int VERSION = 1;
+    private static final int HASH_SPAN = 64 * 1024;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_WINDOW = 1L << 30;
+
+    public static File snapshotFileFor(File source) {
+        return new File(source.getPath() + SUFFIX);
+    }
+
+    /*
+     * loadOrParse
+     *
+     * Returns the snapshot of source when it is present and
+     * valid, otherwise parses source through a MappedDatFile and
+     * writes a fresh snapshot for the next run. Failing to write
+     * the snapshot is logged and does not fail the load.
+     */
+    public static DatFrame loadOrParse(File source) throws IOException {
+        return loadOrParse(source, null);
+    }
+
+    /*
+     * As loadOrParse(source) restricted to the projected columns,
+     * null keeps every column. Without a valid snapshot only the
+     * projected columns are parsed, so no snapshot is written; a
+     * snapshot always holds every column of its source.
+     */
+    public static DatFrame loadOrParse(File source,
+                    Collection<String> projection) throws IOException {
+
+        DatFrame frame = load(source, projection);
+        if(frame != null) {
+            return frame;
+        }
+
+        /*
+         * The identity the snapshot carries is taken before the
+         * parse and checked after it, so a source rewritten while
+         * parsed is not snapshotted under its new identity.
+         */
+        long[] identity = projection == null ? identityOf(source) : null;
+
+        MappedDatFile dataFile = new MappedDatFile(source);
+        try {
+            frame = dataFile.setProjection(projection).getFrame();
+        } finally {
+            dataFile.close();
+        }
+
+        if(projection != null) {
+            return frame;
+        }
+
+        if(!Arrays.equals(identity, identityOf(source))) {
+            log.info("Source changed while parsed, snapshot not written, " +
+                                                    "source=" + source);
+            return frame;
+        }
+
+        try {
+            write(source, frame, identity);
+        } catch(IOException ioex) {
+            log.warn("Snapshot write failed, source=" + source + ", ex=" + ioex);
+        }
+        return frame;
+    }
+
+    /*
+     * Returns the frame held in the snapshot of source, or null
+     * when there is no snapshot or it is stale or corrupt.
+     */
+    public static DatFrame load(File source) throws IOException {
+        return load(source, null);
+    }
+
+    /*
+     * As load(source) restricted to the projected columns, the
+     * blocks of other columns are neither read nor verified.
+     */
+    public static DatFrame load(File source, Collection<String> projection)
+                                                        throws IOException {
+
+        File snapshot = snapshotFileFor(source);
+        if(!snapshot.isFile() || !source.isFile()) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long fileSize = channel.size();
+            ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                Math.min(fileSize, MAX_WINDOW));
+            head.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            if(!Arrays.equals(magic, MAGIC) || head.getInt() != VERSION) {
+                log.info("Snapshot format not recognized, file=" + snapshot);
+                return null;
+            }
+
+            if(head.getLong() != source.length() ||
+                    head.getLong() != source.lastModified() ||
+                    head.getLong() != sourceHash(source)) {
+                log.info("Snapshot stale, file=" + snapshot);
+                return null;
+            }
+
+            int rows = head.getInt();
+            int cols = head.getInt();
+            String[] names = new String[cols];
+            ColumnType[] types = new ColumnType[cols];
+            int[] nonMissing = new int[cols];
+            long[] offsets = new long[cols];
+            long[] lengths = new long[cols];
+            long[] crcs = new long[cols];
+
+            for(int c = 0; c < cols; c++) {
+                byte[] name = new byte[head.getInt()];
+                head.get(name);
+                names[c] = new String(name, "UTF-8");
+                types[c] = ColumnType.values()[head.getInt()];
+                nonMissing[c] = head.getInt();
+                offsets[c] = head.getLong();
+                lengths[c] = head.getLong();
+                crcs[c] = head.getLong();
+            }
+
+            CRC32 headerCrc = new CRC32();
+            byte[] headerBytes = new byte[head.position()];
+            ByteBuffer headerView = head.duplicate();
+            headerView.position(0);
+            headerView.get(headerBytes);
+            headerCrc.update(headerBytes);
+            if(head.getLong() != headerCrc.getValue()) {
+                log.warn("Snapshot header checksum mismatch, file=" + snapshot);
+                return null;
+            }
+
+            List<DatColumn> columns = new ArrayList<DatColumn>(cols);
+            for(int c = 0; c < cols; c++) {
+                if(projection != null && !projection.contains(names[c])) {
+                    continue;
+                }
+                CheckedInputStream block = new CheckedInputStream(
+                    new MappedDatFile.ByteBufferInputStream(
+                        map(channel, offsets[c], lengths[c])), new CRC32());
+                DatColumn column = readColumn(block, names[c], types[c],
+                                                    rows, nonMissing[c]);
+                if(block.getChecksum().getValue() != crcs[c]) {
+                    log.warn("Snapshot column checksum mismatch, column=" +
+                                    names[c] + ", file=" + snapshot);
+                    return null;
+                }
+                columns.add(column);
+            }
+
+            return new DatFrame(columns, rows);
+
+        } catch(RuntimeException rex) {
+            log.warn("Snapshot unreadable, file=" + snapshot + ", ex=" + rex);
+            return null;
+        } catch(EOFException eofex) {
+            log.warn("Snapshot truncated, file=" + snapshot);
+            return null;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /*
+     * Writes the snapshot of frame for source. The snapshot is
+     * written to a temporary file first and then renamed, so a
+     * reader never observes a partially written snapshot. frame
+     * must hold the content source has now.
+     */
+    public static void write(File source, DatFrame frame) throws IOException {
+        write(source, frame, identityOf(source));
+    }
+
+    /*
+     * As write(source, frame) with the length, modification time
+     * and hash of source taken when frame was parsed.
+     */
+    private static void write(File source, DatFrame frame,
+                              long[] identity) throws IOException {
+
+        File snapshot = snapshotFileFor(source);
+        File tmp = File.createTempFile(source.getName(), ".tmp",
+                                    source.getAbsoluteFile().getParentFile());
+
+        List<DatColumn> columns = frame.getColumns();
+        int cols = columns.size();
+        byte[][] names = new byte[cols][];
+
+        long headerSize = MAGIC.length + 4 + 8 + 8 + 8 + 4 + 4 + 8;
+        for(int c = 0; c < cols; c++) {
+            names[c] = columns.get(c).getName().getBytes("UTF-8");
+            headerSize += 4 + names[c].length + 4 + 4 + 8 + 8 + 8;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long[] offsets = new long[cols];
+            long[] lengths = new long[cols];
+            long[] crcs = new long[cols];
+
+            channel.position(headerSize);
+            for(int c = 0; c < cols; c++) {
+                offsets[c] = channel.position();
+                crcs[c] = writeColumn(channel, columns.get(c), frame.getRowCount());
+                lengths[c] = channel.position() - offsets[c];
+            }
+
+            ByteBuffer header = ByteBuffer.allocate((int) headerSize)
+                                        .order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(identity[0]);
+            header.putLong(identity[1]);
+            header.putLong(identity[2]);
+            header.putInt(frame.getRowCount());
+            header.putInt(cols);
+            for(int c = 0; c < cols; c++) {
+                header.putInt(names[c].length);
+                header.put(names[c]);
+                header.putInt(columns.get(c).getType().ordinal());
+                header.putInt(columns.get(c).getNonMissingCount());
+                header.putLong(offsets[c]);
+                header.putLong(lengths[c]);
+                header.putLong(crcs[c]);
+            }
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, header.position());
+            header.putLong(headerCrc.getValue());
+            header.flip();
+
+            channel.position(0);
+            while(header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(false);
+        } catch(IOException ioex) {
+            raf.close();
+            tmp.delete();
+            throw ioex;
+        } finally {
+            raf.close();
+        }
+
+        snapshot.delete();
+        if(!tmp.renameTo(snapshot)) {
+            tmp.delete();
+            throw new IOException("Snapshot rename failed, file=" + snapshot);
+        }
+        log.debug("Snapshot written, file=" + snapshot +
+                            ", bytes=" + snapshot.length());
+    }
+
+    private static long writeColumn(FileChannel channel, DatColumn column,
+                                            int rows) throws IOException {
+
+        ByteBuffer out = ByteBuffer.allocate(IO_BUFFER_SIZE)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+
+        for(int row = 0; row < rows; row++) {
+            switch(column.getType()) {
+                case DOUBLE:
+                    if(out.remaining() < 8) {
+                        flush(channel, out, crc);
+                    }
+                    out.putDouble(column.getDouble(row));
+                    break;
+                case STRING:
+                    String value = column.getString(row);
+                    byte[] bytes = value == null ? null : value.getBytes("UTF-8");
+                    if(out.remaining() < 4) {
+                        flush(channel, out, crc);
+                    }
+                    out.putInt(bytes == null ? -1 : bytes.length);
+                    if(bytes != null) {
+                        if(out.remaining() < bytes.length) {
+                            flush(channel, out, crc);
+                        }
+                        if(out.remaining() < bytes.length) {
+                            ByteBuffer large = ByteBuffer.wrap(bytes);
+                            crc.update(bytes);
+                            while(large.hasRemaining()) {
+                                channel.write(large);
+                            }
+                        } else {
+                            out.put(bytes);
+                        }
+                    }
+                    break;
+                default:
+                    if(out.remaining() < 4) {
+                        flush(channel, out, crc);
+                    }
+                    out.putInt(column.getInt(row));
+            }
+        }
+        flush(channel, out, crc);
+        return crc.getValue();
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out, CRC32 crc)
+                                                        throws IOException {
+        out.flip();
+        crc.update(out.array(), 0, out.limit());
+        while(out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static DatColumn readColumn(InputStream in, String name,
+                                        ColumnType type, int rows,
+                                        int nonMissing) throws IOException {
+
+        byte[] scratch = new byte[IO_BUFFER_SIZE];
+
+        switch(type) {
+            case DOUBLE: {
+                double[] values = new double[Math.max(rows, 16)];
+                int row = 0;
+                while(row < rows) {
+                    int n = Math.min(rows - row, scratch.length / 8);
+                    readFully(in, scratch, n * 8);
+                    ByteBuffer.wrap(scratch, 0, n * 8)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asDoubleBuffer().get(values, row, n);
+                    row += n;
+                }
+                return new DatColumn(name, type, null, values, null,
+                                                    rows, nonMissing);
+            }
+            case STRING: {
+                String[] values = new String[Math.max(rows, 16)];
+                for(int row = 0; row < rows; row++) {
+                    readFully(in, scratch, 4);
+                    int len = ByteBuffer.wrap(scratch, 0, 4)
+                                .order(ByteOrder.LITTLE_ENDIAN).getInt();
+                    if(len >= 0) {
+                        byte[] bytes = len <= scratch.length ? scratch
+                                                             : new byte[len];
+                        readFully(in, bytes, len);
+                        values[row] = new String(bytes, 0, len, "UTF-8");
+                    }
+                }
+                return new DatColumn(name, type, null, null, values,
+                                                    rows, nonMissing);
+            }
+            default: {
+                int[] values = new int[Math.max(rows, 16)];
+                int row = 0;
+                while(row < rows) {
+                    int n = Math.min(rows - row, scratch.length / 4);
+                    readFully(in, scratch, n * 4);
+                    ByteBuffer.wrap(scratch, 0, n * 4)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asIntBuffer().get(values, row, n);
+                    row += n;
+                }
+                return new DatColumn(name, type, values, null, null,
+                                                    rows, nonMissing);
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buf, int len)
+                                                    throws IOException {
+        int off = 0;
+        while(off < len) {
+            int n = in.read(buf, off, len - off);
+            if(n < 0) {
+                throw new EOFException();
+            }
+            off += n;
+        }
+    }
+
+    /*
+     * Maps [offset, offset+length) of channel as one or more
+     * read-only windows of at most MAX_WINDOW bytes.
+     */
+    private static List<ByteBuffer> map(FileChannel channel, long offset,
+                                        long length) throws IOException {
+        List<ByteBuffer> windows = new ArrayList<ByteBuffer>();
+        for(long pos = 0; pos < length; pos += MAX_WINDOW) {
+            windows.add(channel.map(FileChannel.MapMode.READ_ONLY,
+                offset + pos, Math.min(MAX_WINDOW, length - pos)));
+        }
+        return windows;
+    }
+
+    /*
+     * Length, modification time and hash of source, as a snapshot
+     * header holds them.
+     */
+    private static long[] identityOf(File source) throws IOException {
+        return new long[] { source.length(), source.lastModified(),
+                                                sourceHash(source) };
+    }
+
+    /*
+     * CRC32 of the first and last HASH_SPAN bytes of source.
+     */
+    private static long sourceHash(File source) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[HASH_SPAN];
+        RandomAccessFile raf = new RandomAccessFile(source, "r");
+        try {
+            long length = raf.length();
+            int n = (int) Math.min(HASH_SPAN, length);
+            raf.readFully(buf, 0, n);
+            crc.update(buf, 0, n);
+            if(length > HASH_SPAN) {
+                n = (int) Math.min(HASH_SPAN, length - HASH_SPAN);
+                raf.seek(length - n);
+                raf.readFully(buf, 0, n);
+                crc.update(buf, 0, n);
+            }
+        } finally {
+            raf.close();
+        }
+        return crc.getValue();
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * DatTail.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/*
+ * DatTail
+ *
+ * Follows a whitespace-delimited (.dat) data file that is being
+ * appended to. Each poll() parses only the complete rows written
+ * since the previous poll, so the cost of a poll depends on the
+ * rows appended rather than on the size of the file. A partial
+ * last row is left for the next poll.
+ *
+ * The column types found in the first batch are declared for
+ * every later batch, so each batch has the same column types
+ * and batches can be appended to each other on the server.
+ *
+ * When the file shrinks, it has been truncated, the tail starts
+ * over from the header row and the generation is incremented;
+ * the caller should then replace rather than append to what it
+ * has accumulated. Another file renamed into place, as log
+ * rotation and atomic writers do, is told from the open one by
+ * size: the path no longer holds the bytes the open file holds.
+ * When the sizes agree but the path was modified, the bytes just
+ * before the offset are compared as well. The tail then drains
+ * the complete rows left in the open file and reopens the path.
+ * When the new file holds the same bytes up to the offset, as an
+ * atomic "write temp, rename over" append does, the tail carries
+ * on at the offset; otherwise it starts over.
+ */
+public class DatTail implements Closeable {
+
+    private static final int DEFAULT_MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+    /*
+     * Bytes compared to tell the open file from one renamed over
+     * it.
+     */
+    private static final int IDENTITY_SPAN = 4096;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private Collection<String> projection;
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private List<String> header;
+    private DatSchema schema;
+    private long offset;
+    private int generation;
+    private long modified;
+
+    public DatTail(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+    }
+
+    /*
+     * Restricts each batch to the named columns, see DatParser.
+     */
+    public DatTail setProjection(Collection<String> projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /*
+     * Upper bound on the bytes parsed by one poll, a backlog
+     * larger than this is drained over several polls. A single
+     * row longer than the bound is still parsed whole.
+     */
+    public DatTail setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = Math.max(maxBatchBytes, 1);
+        return this;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /*
+     * Offset of the first byte not yet parsed.
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /*
+     * Incremented each time the tail starts over because the
+     * file was truncated or replaced.
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /*
+     * poll
+     *
+     * Returns the complete rows appended since the last poll,
+     * or null when there are none yet.
+     */
+    public synchronized DatFrame poll() throws IOException {
+
+        long size = channel.size();
+        if(size < offset) {
+            restart();
+        } else
+        if(isReplaced() && nextLineEnd(offset, size) < 0) {
+            reopen();
+            size = channel.size();
+        }
+
+        if(header == null) {
+            long headerEnd = nextLineEnd(offset, size);
+            if(headerEnd < 0) {
+                return null;
+            }
+            DatTokenizer tokenizer = new DatTokenizer(0);
+            tokenizer.feed(read(offset, headerEnd));
+            header = tokenizer.finish().getColumnNames();
+            offset = headerEnd;
+        }
+
+        /*
+         * Complete rows within the next maxBatchBytes, or the
+         * next complete row when it is longer than that.
+         */
+        ByteBuffer rows = read(offset, Math.min(size, offset + maxBatchBytes));
+        int last = rows.limit() - 1;
+        while(last >= 0 && rows.get(last) != '\n') {
+            last--;
+        }
+        if(last >= 0) {
+            rows.limit(last + 1);
+        } else {
+            long end = nextLineEnd(offset, size);
+            if(end < 0) {
+                return null;
+            }
+            rows = read(offset, end);
+        }
+
+        DatTokenizer tokenizer = new DatTokenizer(header, 1024);
+        tokenizer.setSchema(schema);
+        tokenizer.setProjection(projection);
+        tokenizer.feed(rows);
+        DatFrame batch = tokenizer.finish();
+        offset += rows.limit();
+
+        if(batch.getRowCount() == 0) {
+            return null;
+        }
+        if(schema == null) {
+            schema = DatSchema.of(batch);
+        }
+        return batch;
+    }
+
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+
+    private void restart() {
+        header = null;
+        schema = null;
+        offset = 0;
+        generation++;
+    }
+
+    /*
+     * True when the path now names another file than the one
+     * open.
+     */
+    private boolean isReplaced() throws IOException {
+        if(!file.isFile()) {
+            return false;
+        }
+        /*
+         * An appender may write between the reads, the path names
+         * the open file only if its length lies between the two.
+         */
+        long before = channel.size();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        long after = channel.size();
+        if(length < before || length > after) {
+            return true;
+        }
+        if(lastModified == modified) {
+            return false;
+        }
+        RandomAccessFile current = new RandomAccessFile(file, "r");
+        try {
+            long end = offset > 0 ? offset : Math.min(after, length);
+            if(!matches(current, end)) {
+                return true;
+            }
+        } finally {
+            current.close();
+        }
+        modified = lastModified;
+        return false;
+    }
+
+    /*
+     * Switches to the file now at the path, carrying on at the
+     * offset when it holds the same bytes up to it.
+     */
+    private void reopen() throws IOException {
+        RandomAccessFile replacement = new RandomAccessFile(file, "r");
+        long lastModified = file.lastModified();
+        boolean superset = header != null &&
+            replacement.length() >= offset &&
+            matches(replacement, Math.min(offset, IDENTITY_SPAN)) &&
+            matches(replacement, offset);
+        raf.close();
+        raf = replacement;
+        channel = raf.getChannel();
+        modified = lastModified;
+        if(!superset) {
+            restart();
+        }
+    }
+
+    /*
+     * True when other holds the bytes of the open file just
+     * before end.
+     */
+    private boolean matches(RandomAccessFile other, long end)
+                                                    throws IOException {
+        if(end > other.length() || end > channel.size()) {
+            return false;
+        }
+        int span = (int) Math.min(IDENTITY_SPAN, end);
+        byte[] open = new byte[span];
+        byte[] named = new byte[span];
+        read(end - span, end).get(open);
+        other.seek(end - span);
+        other.readFully(named);
+        return Arrays.equals(open, named);
+    }
+
+    /*
+     * Reads [start, end) into the reusable buffer.
+     */
+    private ByteBuffer read(long start, long end) throws IOException {
+        int len = (int) (end - start);
+        if(buffer.capacity() < len) {
+            buffer = ByteBuffer.allocate(len);
+        }
+        buffer.clear();
+        buffer.limit(len);
+        while(buffer.hasRemaining()) {
+            int n = channel.read(buffer, start + buffer.position());
+            if(n < 0) {
+                throw new EOFException("File shrank while reading, file=" + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /*
+     * Position just after the first newline in [start, size), or
+     * -1 when there is none.
+     */
+    private long nextLineEnd(long start, long size) throws IOException {
+        for(long pos = start; pos < size; pos += maxBatchBytes) {
+            long end = Math.min(size, pos + maxBatchBytes);
+            ByteBuffer window = read(pos, end);
+            for(int i = 0; i < window.limit(); i++) {
+                if(window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * DatTokenizer.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+
+/*
+ * DatTokenizer
+ *
+ * Incremental row and column boundary scanner shared by the
+ * DatParser input paths. Bytes may be fed in any number of
+ * blocks, cells spanning two blocks are carried over in a
+ * small reusable token buffer. Cells of columns outside the
+ * projection are skipped without being copied or parsed.
+ */
+class DatTokenizer {
+
+    private final int expectedRows;
+
+    private final List<String> header = new ArrayList<String>();
+    private DatSchema schema;
+    private Set<String> projection;
+    private List<DatColumn> columns;
+    private int[] fieldColumn;
+    private byte[] token = new byte[64];
+    private int tokenLen;
+    private boolean inToken;
+    private boolean copying = true;
+    private int field;
+    private int rows;
+    private int maxRows = Integer.MAX_VALUE;
+
+    DatTokenizer(int expectedRows) {
+        this.expectedRows = expectedRows;
+    }
+
+    /*
+     * Creates a tokenizer for input without a header row, such
+     * as a chunk taken from the middle of a data file.
+     */
+    DatTokenizer(List<String> names, int expectedRows) {
+        this.expectedRows = expectedRows;
+        this.header.addAll(names);
+        this.columns = createColumns();
+    }
+
+    /*
+     * Columns named in schema are created with the declared
+     * type rather than inferred from their cells. Must be set
+     * before the header row is complete.
+     */
+    void setSchema(DatSchema schema) {
+        this.schema = schema;
+        if(columns != null) {
+            columns = createColumns();
+        }
+    }
+
+    /*
+     * Restricts the columns created to the named columns, null
+     * keeps every column. Must be set before the header row is
+     * complete.
+     */
+    void setProjection(Collection<String> names) {
+        this.projection = names == null ? null : new HashSet<String>(names);
+        if(columns != null) {
+            columns = createColumns();
+        }
+    }
+
+    /*
+     * Stops accepting data rows once maxRows have been read.
+     */
+    void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    boolean isComplete() {
+        return rows >= maxRows;
+    }
+
+    void feed(byte[] block, int off, int len) throws IOException {
+        int end = off + len;
+        for(int i = off; i < end && rows < maxRows; i++) {
+            accept(block[i]);
+        }
+    }
+
+    /*
+     * Scans buf[position, limit) in place using absolute gets,
+     * the position of buf is left unchanged.
+     */
+    void feed(ByteBuffer buf) throws IOException {
+        int end = buf.limit();
+        for(int i = buf.position(); i < end && rows < maxRows; i++) {
+            accept(buf.get(i));
+        }
+    }
+
+    DatFrame finish() throws IOException {
+
+        /*
+         * Final row without a trailing newline.
+         */
+        if(rows < maxRows) {
+            endToken();
+            endRow();
+        }
+
+        if(columns == null) {
+            throw new IOException("Data file has no header row.");
+        }
+
+        return new DatFrame(columns, rows);
+    }
+
+    private void accept(byte b) throws IOException {
+
+        if(b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            endToken();
+            if(b == '\n') {
+                endRow();
+            }
+        } else {
+            if(!inToken) {
+                inToken = true;
+                copying = columns == null ||
+                    (field < fieldColumn.length && fieldColumn[field] >= 0);
+            }
+            if(copying) {
+                if(tokenLen == token.length) {
+                    token = Arrays.copyOf(token, tokenLen * 2);
+                }
+                token[tokenLen++] = b;
+            }
+        }
+    }
+
+    private void endToken() throws IOException {
+
+        if(!inToken) {
+            return;
+        }
+
+        if(columns == null) {
+            header.add(new String(token, 0, tokenLen, "UTF-8"));
+        } else {
+            if(field >= fieldColumn.length) {
+                throw new IOException("Data row " + (rows + 1) + " has " +
+                    "more than " + fieldColumn.length + " fields.");
+            }
+            if(fieldColumn[field] >= 0) {
+                columns.get(fieldColumn[field]).appendToken(token, 0, tokenLen);
+            }
+        }
+        field++;
+        tokenLen = 0;
+        inToken = false;
+    }
+
+    private void endRow() {
+
+        if(field == 0) {
+            return;
+        }
+
+        if(columns == null) {
+            columns = createColumns();
+        } else {
+            for(int f = field; f < fieldColumn.length; f++) {
+                if(fieldColumn[f] >= 0) {
+                    columns.get(fieldColumn[f]).appendNA();
+                }
+            }
+            rows++;
+        }
+        field = 0;
+    }
+
+    private List<DatColumn> createColumns() {
+        List<DatColumn> created = new ArrayList<DatColumn>(header.size());
+        fieldColumn = new int[header.size()];
+        for(int f = 0; f < header.size(); f++) {
+            String name = header.get(f);
+            if(projection != null && !projection.contains(name)) {
+                fieldColumn[f] = -1;
+                continue;
+            }
+            fieldColumn[f] = created.size();
+            ColumnType type = schema == null ? null : schema.getType(name);
+            if(type == null) {
+                created.add(new DatColumn(name, expectedRows));
+            } else {
+                created.add(new DatColumn(name, type, expectedRows));
+            }
+        }
+        return created;
+    }
+
+}
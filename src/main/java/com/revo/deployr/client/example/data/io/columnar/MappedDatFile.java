@@ -0,0 +1,206 @@
+/*
+ * MappedDatFile.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/*
+ * MappedDatFile
+ *
+ * Read-only memory-mapped view of a local data file.
+ *
+ * The file is mapped with FileChannel.map and is never copied
+ * onto the heap as a whole. The same mapping backs both views:
+ *
+ * - getFrame(), the parsed columnar DatFrame used to build
+ *   DeployR-encoded inputs with the RDataFactory. Column types
+ *   are inferred from a sample of the rows first.
+ * - getBuffers() / openStream(), the raw bytes used to upload
+ *   the file with RProject.uploadFile.
+ *
+ * Files larger than 2GB are mapped as several consecutive
+ * segments. Mapped memory is released by the JVM once the
+ * MappedDatFile is no longer reachable; close() releases the
+ * underlying file handle.
+ */
+public class MappedDatFile implements Closeable {
+
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    private static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final List<ByteBuffer> segments;
+    private final long length;
+    private Collection<String> projection;
+    private DatFrame frame;
+
+    public MappedDatFile(File file) throws IOException {
+
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+
+            List<ByteBuffer> mapped = new ArrayList<ByteBuffer>();
+            for(long pos = 0; pos < length; pos += MAX_SEGMENT_SIZE) {
+                long size = Math.min(MAX_SEGMENT_SIZE, length - pos);
+                mapped.add(channel.map(FileChannel.MapMode.READ_ONLY,
+                                                        pos, size));
+            }
+            this.segments = Collections.unmodifiableList(mapped);
+        } catch(IOException ioex) {
+            raf.close();
+            throw ioex;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /*
+     * Returns independent read-only views over the mapped
+     * segments, in file order.
+     */
+    public List<ByteBuffer> getBuffers() {
+        List<ByteBuffer> views = new ArrayList<ByteBuffer>(segments.size());
+        for(ByteBuffer segment : segments) {
+            views.add(segment.asReadOnlyBuffer());
+        }
+        return views;
+    }
+
+    /*
+     * Restricts getFrame() to the named columns, null keeps every
+     * column. Must be set before the first call to getFrame().
+     */
+    public synchronized MappedDatFile setProjection(Collection<String> projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /*
+     * Parses the mapped bytes in place on first use, the
+     * resulting DatFrame is retained for later calls. Files of
+     * PARALLEL_THRESHOLD bytes or more are parsed on one thread
+     * per available processor.
+     */
+    public DatFrame getFrame() throws IOException {
+        int threads = length >= PARALLEL_THRESHOLD ?
+                        Runtime.getRuntime().availableProcessors() : 1;
+        return getFrame(threads);
+    }
+
+    public synchronized DatFrame getFrame(int threads) throws IOException {
+        if(frame == null) {
+            if(threads > 1) {
+                ExecutorService executor =
+                    Executors.newFixedThreadPool(threads);
+                try {
+                    frame = new ParallelDatParser(executor, threads)
+                                                .setProjection(projection)
+                                                .parse(getBuffers());
+                } finally {
+                    executor.shutdownNow();
+                }
+            } else {
+                DatSchema schema = DatSchema.infer(getBuffers(),
+                                        DatSchema.DEFAULT_SAMPLE_ROWS);
+                frame = new DatParser().setSchema(schema)
+                                        .setProjection(projection)
+                                        .parse(getBuffers());
+            }
+        }
+        return frame;
+    }
+
+    /*
+     * Returns an InputStream over the mapped bytes, suitable for
+     * RProject.uploadFile. Each call returns a new stream.
+     */
+    public InputStream openStream() {
+        return new ByteBufferInputStream(getBuffers());
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /*
+     * ByteBufferInputStream
+     *
+     * Streams a sequence of ByteBuffers without copying them.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final Iterator<ByteBuffer> pending;
+        private ByteBuffer current;
+
+        ByteBufferInputStream(List<ByteBuffer> buffers) {
+            this.pending = buffers.iterator();
+            this.current = pending.hasNext() ? pending.next() : null;
+        }
+
+        public int read() {
+            if(!advance()) {
+                return -1;
+            }
+            return current.get() & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if(len == 0) {
+                return 0;
+            }
+            if(!advance()) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        public long skip(long n) {
+            long skipped = 0;
+            while(skipped < n && advance()) {
+                int step = (int) Math.min(n - skipped, current.remaining());
+                current.position(current.position() + step);
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        public int available() {
+            return current == null ? 0 : current.remaining();
+        }
+
+        private boolean advance() {
+            while(current != null && !current.hasRemaining()) {
+                current = pending.hasNext() ? pending.next() : null;
+            }
+            return current != null;
+        }
+    }
+
+}
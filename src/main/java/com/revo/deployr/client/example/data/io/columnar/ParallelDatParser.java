@@ -0,0 +1,364 @@
+/*
+ * ParallelDatParser.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+
+/*
+ * ParallelDatParser
+ *
+ * Parses a whitespace-delimited (.dat) data file held in memory,
+ * typically the mapped segments of a MappedDatFile, on several
+ * threads at once.
+ *
+ * The header row is read first, after any blank lines, the
+ * remaining bytes are then split into chunks on newline
+ * boundaries. Each chunk is parsed by its own DatTokenizer and
+ * the per-chunk columns are merged in file order, so the
+ * resulting DatFrame is bit-identical to the one produced by the
+ * sequential DatParser given the same DatSchema. Numeric columns
+ * are bit-identical without one.
+ *
+ * A column widened to STRING keeps the token text of the cells
+ * read after the widening, while the cells read before it are
+ * formatted from their numbers. A chunk parsed with a narrower
+ * type than its column had reached by the chunk's first row is
+ * therefore parsed again with that type before the merge.
+ */
+public class ParallelDatParser {
+
+    /*
+     * Chunks smaller than this are not worth a task of their own.
+     */
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private DatSchema schema;
+    private Collection<String> projection;
+
+    /*
+     * The executor is owned by the caller and is not shut down
+     * by the parser. The input is split into at most
+     * parallelism chunks.
+     */
+    public ParallelDatParser(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /*
+     * Declares the column types for every chunk. Without a
+     * schema one is inferred from a sample of the input, so
+     * all chunks start from the same column types.
+     */
+    public ParallelDatParser setSchema(DatSchema schema) {
+        this.schema = schema;
+        return this;
+    }
+
+    /*
+     * Restricts every chunk to the named columns, see DatParser.
+     */
+    public ParallelDatParser setProjection(Collection<String> projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    public DatFrame parse(List<ByteBuffer> buffers) throws IOException {
+
+        Source source = new Source(buffers);
+
+        /*
+         * Header row, parsed sequentially.
+         */
+        long headerStart = 0;
+        long headerEnd = source.nextLineStart(1);
+        while(headerEnd < source.length &&
+                            source.isBlank(headerStart, headerEnd)) {
+            headerStart = headerEnd;
+            headerEnd = source.nextLineStart(headerStart + 1);
+        }
+        DatTokenizer headerTokenizer = new DatTokenizer(0);
+        for(ByteBuffer slice : source.slice(headerStart, headerEnd)) {
+            headerTokenizer.feed(slice);
+        }
+        List<String> header = headerTokenizer.finish().getColumnNames();
+        List<String> names = new ArrayList<String>();
+        for(String name : header) {
+            if(projection == null || projection.contains(name)) {
+                names.add(name);
+            }
+        }
+        DatSchema chunkSchema = schema != null ? schema :
+            DatSchema.infer(buffers, DatSchema.DEFAULT_SAMPLE_ROWS);
+
+        /*
+         * Data rows, split on newline boundaries.
+         */
+        long remaining = source.length - headerEnd;
+        long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                            (remaining + parallelism - 1) / parallelism);
+
+        List<List<ByteBuffer>> slices = new ArrayList<List<ByteBuffer>>();
+        List<Future<DatFrame>> futures = new ArrayList<Future<DatFrame>>();
+        long start = headerEnd;
+        while(start < source.length) {
+            long end = source.nextLineStart(Math.min(source.length,
+                                                    start + chunkSize));
+            slices.add(source.slice(start, end));
+            futures.add(executor.submit(new ChunkTask(header, chunkSchema,
+                                projection, slices.get(slices.size() - 1))));
+            start = end;
+        }
+        List<DatFrame> chunks = collect(futures);
+
+        /*
+         * Chunks parsed narrower than their columns had become
+         * are parsed again with the wider types.
+         */
+        Map<Integer, Future<DatFrame>> reparsed =
+                                new LinkedHashMap<Integer, Future<DatFrame>>();
+        for(int k = 1; k < chunks.size(); k++) {
+            DatSchema widened = widenedSchema(header, names, chunkSchema,
+                                                    chunks, k);
+            if(widened != null) {
+                reparsed.put(k, executor.submit(new ChunkTask(header,
+                                    widened, projection, slices.get(k))));
+            }
+        }
+        List<DatFrame> again = collect(
+                        new ArrayList<Future<DatFrame>>(reparsed.values()));
+        int r = 0;
+        for(int k : reparsed.keySet()) {
+            chunks.set(k, again.get(r++));
+        }
+
+        /*
+         * Merge per-chunk columns in order.
+         */
+        int rows = 0;
+        for(DatFrame chunk : chunks) {
+            rows += chunk.getRowCount();
+        }
+
+        List<DatColumn> columns = new ArrayList<DatColumn>(names.size());
+        for(int c = 0; c < names.size(); c++) {
+            ColumnType type = chunkSchema.getType(names.get(c));
+            DatColumn merged = type == null ?
+                new DatColumn(names.get(c), rows) :
+                new DatColumn(names.get(c), type, rows);
+            for(DatFrame chunk : chunks) {
+                merged.appendColumn(chunk.getColumns().get(c));
+            }
+            columns.add(merged);
+        }
+
+        return new DatFrame(columns, rows);
+    }
+
+    /*
+     * widenedSchema
+     *
+     * The schema chunk k should be parsed with when a column
+     * ends up STRING and had reached a type by the chunk's first
+     * row other than the one the chunk was parsed with, or null
+     * when the chunk is fine as parsed.
+     */
+    private static DatSchema widenedSchema(List<String> header,
+                List<String> names, DatSchema chunkSchema,
+                List<DatFrame> chunks, int k) {
+
+        Map<String, ColumnType> widened = null;
+        for(int c = 0; c < names.size(); c++) {
+            ColumnType declared = chunkSchema.getType(names.get(c));
+            ColumnType reached = declared;
+            ColumnType last = declared;
+            for(int j = 0; j < chunks.size(); j++) {
+                if(j == k) {
+                    reached = last;
+                }
+                DatColumn column = chunks.get(j).getColumns().get(c);
+                if(column.getNonMissingCount() > 0) {
+                    last = last == null ? column.getType() :
+                                        last.join(column.getType());
+                }
+            }
+            if(last == ColumnType.STRING && reached != null &&
+                    reached != declared &&
+                    chunks.get(k).getColumns().get(c).getNonMissingCount() > 0) {
+                if(widened == null) {
+                    widened = new HashMap<String, ColumnType>();
+                }
+                widened.put(names.get(c), reached);
+            }
+        }
+        if(widened == null) {
+            return null;
+        }
+        List<ColumnType> types = new ArrayList<ColumnType>(header.size());
+        for(String name : header) {
+            types.add(widened.containsKey(name) ? widened.get(name) :
+                                            chunkSchema.getType(name));
+        }
+        return new DatSchema(header, types);
+    }
+
+    private static List<DatFrame> collect(List<Future<DatFrame>> futures)
+                                                    throws IOException {
+        List<DatFrame> chunks = new ArrayList<DatFrame>(futures.size());
+        try {
+            for(Future<DatFrame> future : futures) {
+                chunks.add(future.get());
+            }
+        } catch(InterruptedException iex) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parallel parse interrupted.");
+        } catch(ExecutionException eex) {
+            cancel(futures);
+            Throwable cause = eex.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Parallel parse failed, cause=" + cause);
+        }
+        return chunks;
+    }
+
+    private static void cancel(List<Future<DatFrame>> futures) {
+        for(Future<DatFrame> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static class ChunkTask implements Callable<DatFrame> {
+
+        private final List<String> header;
+        private final DatSchema schema;
+        private final Collection<String> projection;
+        private final List<ByteBuffer> slices;
+
+        ChunkTask(List<String> header, DatSchema schema,
+                  Collection<String> projection, List<ByteBuffer> slices) {
+            this.header = header;
+            this.schema = schema;
+            this.projection = projection;
+            this.slices = slices;
+        }
+
+        public DatFrame call() throws IOException {
+            DatTokenizer tokenizer = new DatTokenizer(header, 1024);
+            tokenizer.setSchema(schema);
+            tokenizer.setProjection(projection);
+            for(ByteBuffer slice : slices) {
+                tokenizer.feed(slice);
+            }
+            return tokenizer.finish();
+        }
+    }
+
+    /*
+     * Source
+     *
+     * Addresses a list of buffers as one logical byte range.
+     */
+    private static class Source {
+
+        private final List<ByteBuffer> buffers;
+        private final long[] offsets;
+        private final long length;
+
+        Source(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+            this.offsets = new long[buffers.size()];
+            long total = 0;
+            for(int i = 0; i < buffers.size(); i++) {
+                offsets[i] = total;
+                total += buffers.get(i).remaining();
+            }
+            this.length = total;
+        }
+
+        /*
+         * Returns the position just after the first newline at
+         * or after pos, or length when there is none.
+         */
+        long nextLineStart(long pos) {
+            if(pos > 0 && byteAt(pos - 1) == '\n') {
+                return pos;
+            }
+            for(int b = 0; b < buffers.size(); b++) {
+                ByteBuffer buf = buffers.get(b);
+                long bufEnd = offsets[b] + buf.remaining();
+                if(bufEnd <= pos) {
+                    continue;
+                }
+                int from = buf.position() + (int) Math.max(0, pos - offsets[b]);
+                for(int i = from; i < buf.limit(); i++) {
+                    if(buf.get(i) == '\n') {
+                        return offsets[b] + (i - buf.position()) + 1;
+                    }
+                }
+            }
+            return length;
+        }
+
+        List<ByteBuffer> slice(long start, long end) {
+            List<ByteBuffer> slices = new ArrayList<ByteBuffer>(1);
+            for(int b = 0; b < buffers.size(); b++) {
+                ByteBuffer buf = buffers.get(b);
+                long bufStart = offsets[b];
+                long bufEnd = bufStart + buf.remaining();
+                if(bufEnd <= start || bufStart >= end) {
+                    continue;
+                }
+                ByteBuffer slice = buf.duplicate();
+                slice.limit(buf.position() + (int) (Math.min(end, bufEnd) - bufStart));
+                slice.position(buf.position() + (int) (Math.max(start, bufStart) - bufStart));
+                slices.add(slice);
+            }
+            return slices;
+        }
+
+        /*
+         * True when [start, end) holds only whitespace.
+         */
+        boolean isBlank(long start, long end) {
+            for(long pos = start; pos < end; pos++) {
+                byte b = byteAt(pos);
+                if(b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte byteAt(long pos) {
+            for(int b = buffers.size() - 1; b >= 0; b--) {
+                if(offsets[b] <= pos) {
+                    ByteBuffer buf = buffers.get(b);
+                    return buf.get(buf.position() + (int) (pos - offsets[b]));
+                }
+            }
+            throw new IndexOutOfBoundsException("pos=" + pos);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * ParseBenchmark.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.columnar;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ParseBenchmark
+ *
+ * Compares the sequential DatParser with the ParallelDatParser on
+ * a synthetic Hipparcos-format file built by repeating the rows of
+ * analytics/hipStar.dat. Every parallel result is checked to be
+ * bit-identical to the sequential result, as is the parse of a
+ * file led by a blank line whose numeric column widens to STRING
+ * part way through.
+ *
+ * Usage: gradlew execute -DtestClass=com.revo.deployr.client.example.data.io.columnar.ParseBenchmark
+ *
+ * Optional system properties:
+ *   -Dbench.size.mb=512  size of the synthetic file (default 256)
+ *   -Dbench.runs=5       timed runs per configuration (default 3)
+ */
+public class ParseBenchmark {
+
+    private static Logger log = Logger.getLogger(ParseBenchmark.class);
+
+    public static void main(String args[]) throws Exception {
+
+        long sizeMb = Long.getLong("bench.size.mb", 256);
+        int runs = Integer.getInteger("bench.runs", 3);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        verifyMixed(cores);
+
+        File dataFile = createDataFile(new File("analytics/hipStar.dat"),
+                                        sizeMb * 1024 * 1024);
+        MappedDatFile mapped = new MappedDatFile(dataFile);
+
+        try {
+
+            log.info("[   BENCHMARK    ] Parsing " + mapped.length() +
+                " bytes, cores=" + cores + ", runs=" + runs);
+
+            DatFrame sequential = null;
+            long sequentialNanos = Long.MAX_VALUE;
+            for(int r = 0; r <= runs; r++) {
+                long start = System.nanoTime();
+                sequential = new DatParser().parse(mapped.getBuffers());
+                long elapsed = System.nanoTime() - start;
+                if(r > 0) {
+                    sequentialNanos = Math.min(sequentialNanos, elapsed);
+                }
+            }
+            report("sequential", 1, mapped.length(),
+                        sequentialNanos, sequentialNanos);
+
+            List<Integer> threadCounts = new ArrayList<Integer>();
+            for(int threads = 1; threads < cores; threads *= 2) {
+                threadCounts.add(threads);
+            }
+            threadCounts.add(cores);
+
+            for(int threads : threadCounts) {
+
+                ExecutorService executor =
+                    Executors.newFixedThreadPool(threads);
+                long best = Long.MAX_VALUE;
+                try {
+                    for(int r = 0; r <= runs; r++) {
+                        long start = System.nanoTime();
+                        DatFrame parallel =
+                            new ParallelDatParser(executor, threads)
+                                            .parse(mapped.getBuffers());
+                        long elapsed = System.nanoTime() - start;
+                        if(r > 0) {
+                            best = Math.min(best, elapsed);
+                        }
+                        verify(sequential, parallel);
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+                report("parallel", threads, mapped.length(),
+                                        best, sequentialNanos);
+            }
+
+        } finally {
+            mapped.close();
+            dataFile.delete();
+        }
+    }
+
+    private static void report(String mode, int threads, long bytes,
+                               long nanos, long baselineNanos) {
+        double seconds = nanos / 1e9;
+        log.info(String.format("[   BENCHMARK    ] %-10s threads=%-3d " +
+            "time=%8.3fs throughput=%8.1f MB/s speedup=%5.2fx",
+            mode, threads, seconds, bytes / seconds / (1024 * 1024),
+            (double) baselineNanos / nanos));
+    }
+
+    /*
+     * verifyMixed
+     *
+     * Parses, sequentially and in parallel, a file whose column B
+     * holds "1.50" in every row but one "x" half way, so chunks
+     * after the widening must keep the token text.
+     */
+    private static void verifyMixed(int cores) throws IOException {
+
+        File mixedFile = File.createTempFile("mixed-bench", ".dat");
+        mixedFile.deleteOnExit();
+        int rowCount = 300000;
+        Writer writer = new BufferedWriter(new FileWriter(mixedFile), 1 << 16);
+        try {
+            writer.write("\nA B\n");
+            for(int row = 0; row < rowCount; row++) {
+                writer.write(row + (row == rowCount / 2 ? " x\n" : " 1.50\n"));
+            }
+        } finally {
+            writer.close();
+        }
+
+        MappedDatFile mapped = new MappedDatFile(mixedFile);
+        ExecutorService executor = Executors.newFixedThreadPool(cores);
+        try {
+            DatFrame sequential = new DatParser().parse(mapped.getBuffers());
+            DatFrame parallel = new ParallelDatParser(executor,
+                            Math.max(cores, 4)).parse(mapped.getBuffers());
+            verify(sequential, parallel);
+            log.info("[   BENCHMARK    ] Mixed column parse verified, rows=" +
+                parallel.getRowCount() + ", last B=" + parallel.getColumns()
+                                        .get(1).getString(rowCount - 1));
+        } finally {
+            executor.shutdownNow();
+            mapped.close();
+            mixedFile.delete();
+        }
+    }
+
+    /*
+     * Fails when the two frames differ in any cell bit pattern.
+     */
+    private static void verify(DatFrame expected, DatFrame actual) {
+
+        if(expected.getRowCount() != actual.getRowCount()) {
+            throw new IllegalStateException("Row count mismatch, expected=" +
+                expected.getRowCount() + ", actual=" + actual.getRowCount());
+        }
+
+        for(int c = 0; c < expected.getColumns().size(); c++) {
+            DatColumn e = expected.getColumns().get(c);
+            DatColumn a = actual.getColumns().get(c);
+            if(e.getType() != a.getType()) {
+                throw new IllegalStateException("Column type mismatch, " +
+                                            "column=" + e.getName());
+            }
+            for(int row = 0; row < e.size(); row++) {
+                boolean same = e.getType() == ColumnType.STRING ?
+                    String.valueOf(e.getString(row)).equals(
+                                    String.valueOf(a.getString(row))) :
+                    Double.doubleToRawLongBits(e.getDouble(row)) ==
+                        Double.doubleToRawLongBits(a.getDouble(row));
+                if(!same) {
+                    throw new IllegalStateException("Cell mismatch, " +
+                        "column=" + e.getName() + ", row=" + row);
+                }
+            }
+        }
+    }
+
+    private static File createDataFile(File source, long targetSize)
+                                                    throws IOException {
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(source));
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+
+        File target = File.createTempFile("hipStar-bench", ".dat");
+        target.deleteOnExit();
+
+        Writer writer = new BufferedWriter(new FileWriter(target), 1 << 16);
+        try {
+            long written = 0;
+            writer.write(lines.get(0));
+            writer.write('\n');
+            while(written < targetSize) {
+                for(int i = 1; i < lines.size(); i++) {
+                    writer.write(lines.get(i));
+                    writer.write('\n');
+                    written += lines.get(i).length() + 1;
+                }
+            }
+        } finally {
+            writer.close();
+        }
+
+        return target;
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * ChunkedInputBenchmark.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ChunkedInputBenchmark
+ *
+ * Times sending a data file to a DeployR project as a single
+ * data.frame input and as ChunkedInputs of several chunk sizes,
+ * in both modes. Each run checks that the reassembled data.frame
+ * has the row count of the data file.
+ *
+ * Usage: gradlew execute -DtestClass=com.revo.deployr.client.example.data.io.encode.ChunkedInputBenchmark
+ *
+ * Optional system properties:
+ *   -Dbench.file=big.dat          data file (default analytics/hipStar.dat)
+ *   -Dbench.chunk.rows=500,5000   chunk sizes (default rows/16, rows/4, rows)
+ *   -Dbench.runs=5                timed runs per configuration (default 3)
+ */
+public class ChunkedInputBenchmark {
+
+    private static Logger log = Logger.getLogger(ChunkedInputBenchmark.class);
+
+    public static void main(String args[]) throws Exception {
+
+        RClient rClient = null;
+        RProject rProject = null;
+
+        try {
+
+            String endpoint = System.getProperty("endpoint");
+            File dataFile = new File(System.getProperty("bench.file",
+                                                "analytics/hipStar.dat"));
+            int runs = Integer.getInteger("bench.runs", 3);
+
+            DatFrame frame = DatSnapshot.loadOrParse(dataFile);
+            int rows = frame.getRowCount();
+
+            List<Integer> chunkRows = new ArrayList<Integer>();
+            String sizes = System.getProperty("bench.chunk.rows");
+            if(sizes != null) {
+                for(String size : sizes.split(",")) {
+                    chunkRows.add(Integer.parseInt(size.trim()));
+                }
+            } else {
+                chunkRows.add(Math.max(1, rows / 16));
+                chunkRows.add(Math.max(1, rows / 4));
+                chunkRows.add(rows);
+            }
+
+            rClient = RClientFactory.createClient(endpoint);
+            RAuthentication rAuth =
+                    new RBasicAuthentication(System.getProperty("username"),
+                            System.getProperty("password"));
+            RUser rUser = rClient.login(rAuth);
+            rProject = rUser.createProject();
+
+            log.info("[   BENCHMARK    ] Sending " + rows + " rows from " +
+                dataFile + ", runs=" + runs + ", chunk rows=" + chunkRows);
+
+            /*
+             * Baseline, the whole frame as one input.
+             */
+            long best = Long.MAX_VALUE;
+            for(int r = 0; r <= runs; r++) {
+                long start = System.nanoTime();
+                ProjectExecutionOptions options = new ProjectExecutionOptions();
+                options.rinputs = Arrays.asList(frame.toDataFrame("hip"));
+                rProject.executeCode("invisible(NULL)", options);
+                long elapsed = System.nanoTime() - start;
+                if(r > 0) {
+                    best = Math.min(best, elapsed);
+                }
+                verify(rProject, rows);
+            }
+            long baseline = best;
+            report("single", rows, 1, baseline, baseline);
+
+            for(ChunkedInputs.Mode mode : ChunkedInputs.Mode.values()) {
+                for(int size : chunkRows) {
+                    ChunkedInputs inputs = new ChunkedInputs("hip", frame, size);
+                    best = Long.MAX_VALUE;
+                    for(int r = 0; r <= runs; r++) {
+                        long start = System.nanoTime();
+                        inputs.send(rProject, mode);
+                        long elapsed = System.nanoTime() - start;
+                        if(r > 0) {
+                            best = Math.min(best, elapsed);
+                        }
+                        verify(rProject, rows);
+                    }
+                    report(mode.name().toLowerCase(), size,
+                                inputs.getChunkCount(), best, baseline);
+                }
+            }
+
+        } finally {
+            try {
+                if (rProject != null) {
+                    rProject.close();
+                }
+            } catch (Exception fex) {
+            }
+            try {
+                if (rClient != null) {
+                    rClient.release();
+                }
+            } catch (Exception fex) {
+            }
+        }
+    }
+
+    private static void report(String mode, int chunkRows, int chunks,
+                               long nanos, long baselineNanos) {
+        log.info(String.format("[   BENCHMARK    ] %-10s chunk rows=%-8d " +
+            "chunks=%-5d time=%8.3fs vs single=%5.2fx", mode, chunkRows,
+            chunks, nanos / 1e9, (double) baselineNanos / nanos));
+    }
+
+    /*
+     * Fails unless the workspace "hip" data.frame holds rows rows,
+     * then removes it for the next run.
+     */
+    private static void verify(RProject rProject, int rows) throws Exception {
+
+        ProjectExecutionOptions options = new ProjectExecutionOptions();
+        options.routputs = Arrays.asList("hipDim");
+        RProjectExecution exec = rProject.executeCode(
+                            "hipDim <- dim(hip); rm(hip)", options);
+
+        for(RData rData : exec.about().workspaceObjects) {
+            if(rData instanceof RNumericVector) {
+                List<Double> value = ((RNumericVector) rData).getValue();
+                if(value.size() > 0 && value.get(0).intValue() == rows) {
+                    return;
+                }
+                throw new IllegalStateException("Row count mismatch, " +
+                            "expected=" + rows + ", actual=" + value);
+            }
+        }
+        throw new IllegalStateException("Row count not returned.");
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * ChunkedInputs.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ChunkedInputs
+ *
+ * Splits a DatFrame into blocks of at most chunkRows rows, each
+ * encoded as its own data.frame input, and reassembles them into
+ * a single data.frame in the workspace of an RProject before the
+ * user script runs. Chunks are encoded only as they are sent, as
+ * views over the rows of the frame.
+ *
+ * Two modes are supported:
+ *
+ *   COMBINED    one execution carrying every chunk as a separately
+ *               named input, <name>_chunk_1 .. <name>_chunk_N
+ *   SEQUENTIAL  one execution per chunk, each request body holds
+ *               a single chunk
+ *
+ * Executions on one project are serialized by the server, so the
+ * chunks of a project are always sent one after another.
+ */
+public class ChunkedInputs {
+
+    private static Logger log = Logger.getLogger(ChunkedInputs.class);
+
+    public enum Mode { COMBINED, SEQUENTIAL }
+
+    private final String name;
+    private final DatFrame frame;
+    private final int chunkRows;
+
+    public ChunkedInputs(String name, DatFrame frame, int chunkRows) {
+        this.name = name;
+        this.frame = frame;
+        this.chunkRows = Math.max(chunkRows, 1);
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    public int getChunkCount() {
+        return Math.max(1, (frame.getRowCount() + chunkRows - 1) / chunkRows);
+    }
+
+    public String getChunkName(int chunk) {
+        return name + "_chunk_" + (chunk + 1);
+    }
+
+    public RData getChunk(int chunk, String chunkName) {
+        int from = chunk * chunkRows;
+        int to = Math.min(frame.getRowCount(), from + chunkRows);
+        return frame.toDataFrame(chunkName, from, to);
+    }
+
+    /*
+     * send
+     *
+     * Sends every chunk to rProject and leaves the reassembled
+     * data.frame in its workspace under name. The chunk objects
+     * are removed once reassembled.
+     */
+    public void send(RProject rProject, Mode mode) throws Exception {
+
+        int chunks = getChunkCount();
+        long start = System.currentTimeMillis();
+
+        if(mode == Mode.COMBINED) {
+
+            List<RData> rinputs = new ArrayList<RData>(chunks);
+            for(int chunk = 0; chunk < chunks; chunk++) {
+                rinputs.add(getChunk(chunk, getChunkName(chunk)));
+            }
+            ProjectExecutionOptions options = new ProjectExecutionOptions();
+            options.rinputs = rinputs;
+
+            String parts = "sprintf('" + name + "_chunk_%d', 1:" + chunks + ")";
+            rProject.executeCode(name + " <- do.call(rbind, unname(mget(" +
+                parts + "))); rm(list = " + parts + ")", options);
+
+        } else {
+
+            String list = name + "_chunks";
+            String chunkName = name + "_chunk";
+            for(int chunk = 0; chunk < chunks; chunk++) {
+                ProjectExecutionOptions options = new ProjectExecutionOptions();
+                options.rinputs = Arrays.asList(getChunk(chunk, chunkName));
+                rProject.executeCode((chunk == 0 ? list + " <- list(); " : "") +
+                    list + "[[" + (chunk + 1) + "]] <- " + chunkName +
+                    "; rm(" + chunkName + ")", options);
+            }
+            rProject.executeCode(name + " <- do.call(rbind, " + list +
+                                            "); rm(" + list + ")");
+        }
+
+        log.debug("Chunked inputs sent, name=" + name + ", mode=" + mode +
+            ", rows=" + frame.getRowCount() + ", chunks=" + chunks +
+            ", ms=" + (System.currentTimeMillis() - start));
+    }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * EncodedInputCache.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import java.util.*;
+import java.io.*;
+import java.security.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * EncodedInputCache
+ *
+ * Memoizes execution inputs by a fingerprint of the data they
+ * were built from, so repeated executions with unchanged inputs
+ * neither reload the data nor encode it again.
+ *
+ * The cached form is the DeployR JSON encoding of an "inputs"
+ * member, as written by RDataJsonWriter.writeMember, for requests
+ * whose body the application writes, see
+ * StreamedDataInEncodedDataOut. The member is never built as a
+ * whole: a miss encodes straight into the request body and, with
+ * a cache directory, into the cache file at once, a disk hit
+ * copies the file into the body in chunks. Members up to
+ * maxEntryBytes are also kept in an LRU bounded by an estimate of
+ * the bytes held.
+ *
+ * The key is the caller's fingerprint of everything that decides
+ * the encoding, see fingerprint; a changed source gives a new key
+ * and the stale entry ages out.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dinput.cache.bytes=n        memory bound (default 64MB)
+ *   -Dinput.cache.entry.bytes=n  largest member kept in memory (default 4MB)
+ *   -Dinput.cache.dir=dir        disk cache of encoded members (default none)
+ */
+public class EncodedInputCache {
+
+    private static Logger log = Logger.getLogger(EncodedInputCache.class);
+
+    /*
+     * Builds the encoding of one "inputs" member on a cache miss.
+     */
+    public interface Encoder {
+        void encode(RDataJsonWriter writer) throws Exception;
+    }
+
+    private static EncodedInputCache defaultCache;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final long maxBytes;
+    private final File directory;
+    private long maxEntryBytes = 4 * 1024 * 1024L;
+    private final LinkedHashMap<String, Entry> entries =
+                    new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long diskHits;
+    private long misses;
+
+    /*
+     * directory may be null, encoded members are then held in
+     * memory only.
+     */
+    public EncodedInputCache(long maxBytes, File directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+    }
+
+    public static synchronized EncodedInputCache getDefault() {
+        if(defaultCache == null) {
+            String dir = System.getProperty("input.cache.dir");
+            defaultCache = new EncodedInputCache(
+                Long.getLong("input.cache.bytes", 64 * 1024 * 1024L),
+                dir == null ? null : new File(dir))
+                .setMaxEntryBytes(Long.getLong("input.cache.entry.bytes",
+                                                    4 * 1024 * 1024L));
+        }
+        return defaultCache;
+    }
+
+    /*
+     * Largest estimated heap weight of an encoded member kept in
+     * memory; larger members are served from the cache directory
+     * only.
+     */
+    public synchronized EncodedInputCache setMaxEntryBytes(long maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+        return this;
+    }
+
+    /*
+     * fingerprint
+     *
+     * SHA-256, in hex, over parts. A local file source is best
+     * described by fingerprint(file) plus whatever else shapes the
+     * encoding, such as the input name and a column projection.
+     */
+    public static String fingerprint(Object... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for(Object part : parts) {
+                md.update(String.valueOf(part).getBytes("UTF-8"));
+                md.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for(byte b : md.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch(Exception ex) {
+            throw new IllegalStateException("SHA-256 unavailable.", ex);
+        }
+    }
+
+    /*
+     * Fingerprint of a local file by path, size and modification
+     * time, the check DatSnapshot uses; the content is not read.
+     */
+    public static String fingerprint(File file) throws IOException {
+        return fingerprint(file.getCanonicalPath(), file.length(),
+                                                file.lastModified());
+    }
+
+    /*
+     * writeMember
+     *
+     * Writes the encoded member for key to writer, within its
+     * startInputs and endInputs, running encoder on a miss in
+     * memory and on disk. On a miss encoder writes through to
+     * writer, so should it fail part of the member has been
+     * written and the request must be abandoned.
+     */
+    public void writeMember(String key, Encoder encoder,
+                            RDataJsonWriter writer) throws IOException {
+
+        String cached = lookup(key);
+        if(cached != null) {
+            writer.beginMember();
+            char[] chunk = new char[Math.min(cached.length(), CHUNK_SIZE)];
+            for(int off = 0; off < cached.length(); off += chunk.length) {
+                int n = Math.min(chunk.length, cached.length() - off);
+                cached.getChars(off, off + n, chunk, 0);
+                writer.writeRaw(chunk, 0, n);
+            }
+            return;
+        }
+
+        File file = directory == null ? null :
+                        new File(directory, fingerprint(key) + ".json");
+        if(file != null && file.isFile()) {
+            Reader in = null;
+            try {
+                in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            } catch(IOException ioex) {
+                log.warn("Encoded input unreadable, file=" + file +
+                                                    ", ex=" + ioex);
+            }
+            if(in != null) {
+                try {
+                    writer.beginMember();
+                    copy(key, in, file.length(), writer);
+                    synchronized(this) {
+                        diskHits++;
+                    }
+                    return;
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        }
+
+        writer.beginMember();
+        MemberTee tee = new MemberTee(writer, file, maxCharsOf());
+        try {
+            RDataJsonWriter member = new RDataJsonWriter(tee);
+            encoder.encode(member);
+            member.flush();
+        } catch(IOException ioex) {
+            tee.abandon();
+            throw ioex;
+        } catch(Exception ex) {
+            tee.abandon();
+            throw new IOException("Input encoding failed, cause=" + ex, ex);
+        }
+        tee.commit();
+        if(tee.captured != null) {
+            String encoded = tee.captured.toString();
+            store(key, encoded, weightOf(encoded));
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized String toString() {
+        return "EncodedInputCache [ entries=" + entries.size() + ", bytes=" +
+            bytes + ", hits=" + hits + ", diskHits=" + diskHits +
+            ", misses=" + misses + " ]";
+    }
+
+    private synchronized String lookup(String key) {
+        Entry entry = entries.get(key);
+        if(entry != null) {
+            hits++;
+            return entry.value;
+        }
+        misses++;
+        return null;
+    }
+
+    private synchronized void store(String key, String value, long weight) {
+        Entry previous = entries.remove(key);
+        if(previous != null) {
+            bytes -= previous.weight;
+        }
+        if(weight > maxBytes) {
+            log.debug("Input not cached in memory, weight=" + weight +
+                                            ", maxBytes=" + maxBytes);
+            return;
+        }
+        entries.put(key, new Entry(value, weight));
+        bytes += weight;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while(bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    /*
+     * Copies a cache file into writer in chunks, keeping it in
+     * memory too when its size allows.
+     */
+    private void copy(String key, Reader in, long fileBytes,
+                      RDataJsonWriter writer) throws IOException {
+        StringBuilder captured = 64 + 2 * fileBytes <= maxEntryBytesOf() ?
+                        new StringBuilder((int) fileBytes) : null;
+        char[] chunk = new char[CHUNK_SIZE];
+        int n;
+        while((n = in.read(chunk)) != -1) {
+            writer.writeRaw(chunk, 0, n);
+            if(captured != null) {
+                captured.append(chunk, 0, n);
+            }
+        }
+        if(captured != null) {
+            String encoded = captured.toString();
+            store(key, encoded, weightOf(encoded));
+        }
+    }
+
+    private synchronized long maxEntryBytesOf() {
+        return Math.min(maxEntryBytes, maxBytes);
+    }
+
+    /*
+     * Chars of the largest member kept in memory, see weightOf.
+     */
+    private long maxCharsOf() {
+        return Math.max((maxEntryBytesOf() - 64) / 2, 0);
+    }
+
+    private static long weightOf(String encoded) {
+        return 64 + 2L * encoded.length();
+    }
+
+    /*
+     * MemberTee
+     *
+     * Passes a member being encoded to the request writer and to
+     * a temporary cache file, renamed into place on commit, and
+     * keeps it in memory while it stays under maxChars. Should the
+     * file fail, the member is still written to the request and
+     * only the file is given up.
+     */
+    private static class MemberTee extends Writer {
+
+        final RDataJsonWriter target;
+        final File file;
+        final long maxChars;
+        File tmp;
+        Writer out;
+        StringBuilder captured = new StringBuilder();
+
+        MemberTee(RDataJsonWriter target, File file, long maxChars) {
+            this.target = target;
+            this.file = file;
+            this.maxChars = maxChars;
+            if(file != null) {
+                try {
+                    file.getParentFile().mkdirs();
+                    tmp = File.createTempFile("member", ".tmp",
+                                                file.getParentFile());
+                    out = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(tmp), "UTF-8"), CHUNK_SIZE);
+                } catch(IOException ioex) {
+                    fileFailed(ioex);
+                }
+            }
+        }
+
+        public void write(char[] chars, int off, int len) throws IOException {
+            target.writeRaw(chars, off, len);
+            if(out != null) {
+                try {
+                    out.write(chars, off, len);
+                } catch(IOException ioex) {
+                    fileFailed(ioex);
+                }
+            }
+            if(captured != null) {
+                if(captured.length() + len > maxChars) {
+                    captured = null;
+                } else {
+                    captured.append(chars, off, len);
+                }
+            }
+        }
+
+        public void flush() throws IOException {
+        }
+
+        public void close() throws IOException {
+        }
+
+        /*
+         * Completes the cache file, the member was encoded. Each
+         * miss writes a temporary file of its own; when the rename
+         * fails, typically because a concurrent miss for the same
+         * key committed first, that entry is kept and the temporary
+         * file dropped.
+         */
+        void commit() {
+            if(out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                if(!tmp.renameTo(file)) {
+                    log.debug("Encoded input not renamed into place, " +
+                                                        "file=" + file);
+                }
+            } catch(IOException ioex) {
+                fileFailed(ioex);
+            } finally {
+                tmp.delete();
+            }
+        }
+
+        /*
+         * Drops the partial member, encoding failed.
+         */
+        void abandon() {
+            captured = null;
+            IOUtils.closeQuietly(out);
+            out = null;
+            if(tmp != null) {
+                tmp.delete();
+            }
+        }
+
+        private void fileFailed(IOException ioex) {
+            log.warn("Encoded input write failed, file=" + file +
+                                                    ", ex=" + ioex);
+            IOUtils.closeQuietly(out);
+            out = null;
+            if(tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final String value;
+        final long weight;
+
+        Entry(String value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+}
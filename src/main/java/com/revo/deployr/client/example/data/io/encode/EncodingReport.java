@@ -0,0 +1,122 @@
+/*
+ * EncodingReport.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * EncodingReport
+ *
+ * Payload of the numeric vectors an RDataJsonWriter wrote under
+ * its NumericEncodingPolicy, per column, against the baseline:
+ * the chars of the same cells written with Double.toString, as
+ * the client library encodes RDataFactory.createNumericVector.
+ * Counts cover the cell values and their separators only, the
+ * rest of the vector encoding is the same either way.
+ *
+ * Chunks of the same column written through one report add up.
+ */
+public class EncodingReport {
+
+    private final Map<String, long[]> columns =
+                                new LinkedHashMap<String, long[]>();
+
+    /*
+     * Adds cells of column written as encodedChars, against
+     * baselineChars.
+     */
+    public synchronized void add(String column, long cells,
+                                 long baselineChars, long encodedChars) {
+        long[] counts = columns.get(column);
+        if(counts == null) {
+            counts = new long[3];
+            columns.put(column, counts);
+        }
+        counts[0] += cells;
+        counts[1] += baselineChars;
+        counts[2] += encodedChars;
+    }
+
+    public synchronized Set<String> getColumns() {
+        return new LinkedHashSet<String>(columns.keySet());
+    }
+
+    public synchronized long getCells(String column) {
+        long[] counts = columns.get(column);
+        return counts == null ? 0 : counts[0];
+    }
+
+    public synchronized long getBaselineChars(String column) {
+        long[] counts = columns.get(column);
+        return counts == null ? 0 : counts[1];
+    }
+
+    public synchronized long getEncodedChars(String column) {
+        long[] counts = columns.get(column);
+        return counts == null ? 0 : counts[2];
+    }
+
+    /*
+     * Percentage of the baseline chars of column saved, negative
+     * when the encoding came out larger.
+     */
+    public synchronized double getReduction(String column) {
+        long[] counts = columns.get(column);
+        return counts == null ? 0 : reduction(counts[1], counts[2]);
+    }
+
+    public synchronized long getBaselineChars() {
+        long chars = 0;
+        for(long[] counts : columns.values()) {
+            chars += counts[1];
+        }
+        return chars;
+    }
+
+    public synchronized long getEncodedChars() {
+        long chars = 0;
+        for(long[] counts : columns.values()) {
+            chars += counts[2];
+        }
+        return chars;
+    }
+
+    /*
+     * Logs one line per column and the total.
+     */
+    public synchronized void report(Logger log) {
+        for(Map.Entry<String, long[]> entry : columns.entrySet()) {
+            long[] counts = entry.getValue();
+            log.info("[ ENCODED SIZE   ] column=" + entry.getKey() +
+                ", cells=" + counts[0] + ", baseline=" + counts[1] +
+                ", encoded=" + counts[2] + ", saved=" +
+                String.format("%.1f", reduction(counts[1], counts[2])) + "%");
+        }
+        log.info("[ ENCODED SIZE   ] total, baseline=" + getBaselineChars() +
+            ", encoded=" + getEncodedChars() + ", saved=" +
+            String.format("%.1f", reduction(getBaselineChars(),
+                                            getEncodedChars())) + "%");
+    }
+
+    public synchronized String toString() {
+        return "EncodingReport [ columns=" + columns.size() + ", baseline=" +
+            getBaselineChars() + ", encoded=" + getEncodedChars() + " ]";
+    }
+
+    private static double reduction(long baseline, long encoded) {
+        return baseline == 0 ? 0 : 100.0 * (baseline - encoded) / baseline;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * FormUrlEncodingWriter.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import java.io.*;
+
+/*
+ * FormUrlEncodingWriter
+ *
+ * Writes an application/x-www-form-urlencoded request body to an
+ * OutputStream, such as the chunked body of an HttpURLConnection.
+ * Parameter values are UTF-8 percent-encoded as they are written,
+ * through a reusable byte buffer, so a large value never has to
+ * be held as a String.
+ */
+public class FormUrlEncodingWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private long count;
+    private boolean firstParameter = true;
+    private char highSurrogate;
+
+    public FormUrlEncodingWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /*
+     * Starts a parameter, following writes form its value.
+     */
+    public FormUrlEncodingWriter startParameter(String name) throws IOException {
+        if(!firstParameter) {
+            put('&');
+        }
+        firstParameter = false;
+        write(name);
+        put('=');
+        return this;
+    }
+
+    public FormUrlEncodingWriter parameter(String name, String value)
+                                                    throws IOException {
+        startParameter(name);
+        write(value);
+        return this;
+    }
+
+    /*
+     * Number of encoded bytes written so far.
+     */
+    public long getByteCount() {
+        return count + pos;
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        for(int i = off; i < end; i++) {
+            encode(cbuf[i]);
+        }
+    }
+
+    public void write(String s) throws IOException {
+        for(int i = 0; i < s.length(); i++) {
+            encode(s.charAt(i));
+        }
+    }
+
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void encode(char c) throws IOException {
+
+        if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+           (c >= '0' && c <= '9') || c == '.' || c == '-' ||
+            c == '*' || c == '_') {
+            put(c);
+        } else
+        if(c == ' ') {
+            put('+');
+        } else
+        if(c < 0x80) {
+            escape(c);
+        } else
+        if(c < 0x800) {
+            escape(0xC0 | (c >> 6));
+            escape(0x80 | (c & 0x3F));
+        } else
+        if(Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else
+        if(Character.isLowSurrogate(c) && highSurrogate != 0) {
+            int cp = Character.toCodePoint(highSurrogate, c);
+            highSurrogate = 0;
+            escape(0xF0 | (cp >> 18));
+            escape(0x80 | ((cp >> 12) & 0x3F));
+            escape(0x80 | ((cp >> 6) & 0x3F));
+            escape(0x80 | (cp & 0x3F));
+        } else {
+            escape(0xE0 | (c >> 12));
+            escape(0x80 | ((c >> 6) & 0x3F));
+            escape(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void escape(int b) throws IOException {
+        put('%');
+        put(HEX[(b >> 4) & 0xF]);
+        put(HEX[b & 0xF]);
+    }
+
+    private void put(char c) throws IOException {
+        if(pos == BUFFER_SIZE) {
+            drain();
+        }
+        buffer[pos++] = (byte) c;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, pos);
+        count += pos;
+        pos = 0;
+    }
+
+}
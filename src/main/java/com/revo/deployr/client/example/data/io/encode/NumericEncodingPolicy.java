@@ -0,0 +1,257 @@
+/*
+ * NumericEncodingPolicy.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.*;
+
+/*
+ * NumericEncodingPolicy
+ *
+ * How RDataJsonWriter formats the cells of numeric vectors. The
+ * client library writes every cell with Double.toString, so a
+ * whole value 2 goes as "2.0", a value read as 0.0001 as "1.0E-4"
+ * and a computed value such as 0.1 + 0.2 as "0.30000000000000004".
+ * Three options reduce that text:
+ *
+ *   compact    whole values are written without a fraction, "2".
+ *              Lossless, on by default, as RDataJsonWriter always
+ *              did.
+ *
+ *   shortest   other values are written as the shortest fixed
+ *              decimal that R parses back to the very same double.
+ *              Lossless, off by default.
+ *
+ *   decimals   values are rounded half away from zero, -2.5 to -3,
+ *              as RoundingMode.HALF_UP does, to the given number of
+ *              decimal places, for all numeric columns or per
+ *              column. Lossy, off by default. Columns such as Vmag
+ *              or Plx that were measured to 2 decimals can be
+ *              rounded to 2 without losing anything they carried.
+ *
+ * Values too large to scale exactly, and values below 0.001 when
+ * not rounded, fall back to Double.toString.
+ *
+ * The text the client library writes for rinputs is outside
+ * this policy, only rounding applies there, see toDataFrame.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dencode.compact=false       write whole values as "2.0"
+ *   -Dencode.shortest=true       shortest round-trip decimals
+ *   -Dencode.decimals=n          round all numeric columns
+ *   -Dencode.decimals.<column>=n round one column, overriding the above
+ */
+public class NumericEncodingPolicy {
+
+    private static final String DECIMALS = "encode.decimals";
+
+    /*
+     * Largest decimals supported, 10^MAX_DECIMALS is exact
+     * as a double.
+     */
+    public static final int MAX_DECIMALS = 17;
+
+    static final double[] POW10 = new double[MAX_DECIMALS + 1];
+    static {
+        POW10[0] = 1;
+        for(int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /*
+     * Scaled values must stay below 2^53 to be whole longs
+     * exactly representable as doubles.
+     */
+    static final double MAX_SCALED = 9007199254740992.0;
+
+    private static NumericEncodingPolicy defaultPolicy;
+
+    private boolean compact = true;
+    private boolean shortest;
+    private int decimals = -1;
+    private final Map<String, Integer> columnDecimals =
+                                    new TreeMap<String, Integer>();
+
+    public static synchronized NumericEncodingPolicy getDefault() {
+        if(defaultPolicy == null) {
+            NumericEncodingPolicy policy = new NumericEncodingPolicy()
+                .setCompact(!"false".equals(System.getProperty("encode.compact")))
+                .setShortest(Boolean.getBoolean("encode.shortest"))
+                .setDecimals(Integer.getInteger(DECIMALS, -1));
+            for(String key : System.getProperties().stringPropertyNames()) {
+                if(key.startsWith(DECIMALS + ".")) {
+                    Integer columnDecimals = Integer.getInteger(key);
+                    if(columnDecimals != null) {
+                        policy.setDecimals(key.substring(
+                            DECIMALS.length() + 1), columnDecimals);
+                    }
+                }
+            }
+            defaultPolicy = policy;
+        }
+        return defaultPolicy;
+    }
+
+    public NumericEncodingPolicy setCompact(boolean compact) {
+        this.compact = compact;
+        return this;
+    }
+
+    public NumericEncodingPolicy setShortest(boolean shortest) {
+        this.shortest = shortest;
+        return this;
+    }
+
+    /*
+     * Decimal places all numeric columns are rounded to, -1 for
+     * no rounding.
+     */
+    public NumericEncodingPolicy setDecimals(int decimals) {
+        this.decimals = checkDecimals(decimals);
+        return this;
+    }
+
+    /*
+     * Decimal places column is rounded to, overriding the policy
+     * wide setting; -1 keeps the column unrounded.
+     */
+    public NumericEncodingPolicy setDecimals(String column, int decimals) {
+        columnDecimals.put(column, checkDecimals(decimals));
+        return this;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public boolean isShortest() {
+        return shortest;
+    }
+
+    /*
+     * Decimal places column is rounded to, -1 for none.
+     */
+    public int getDecimals(String column) {
+        Integer decimals = columnDecimals.get(column);
+        return decimals == null ? this.decimals : decimals;
+    }
+
+    /*
+     * True when this policy encodes every cell as the client
+     * library would read it back, that is rounds nothing.
+     */
+    public boolean isLossless() {
+        if(decimals >= 0) {
+            return false;
+        }
+        for(Integer decimals : columnDecimals.values()) {
+            if(decimals >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * round
+     *
+     * value rounded half away from zero to decimals places, or
+     * value itself when decimals is negative or value can not be
+     * scaled exactly.
+     */
+    public static double round(double value, int decimals) {
+        if(decimals < 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        double scaled = value * POW10[decimals];
+        if(Math.abs(scaled) >= MAX_SCALED) {
+            return value;
+        }
+        return roundHalfUp(scaled) / POW10[decimals];
+    }
+
+    /*
+     * scaled rounded half away from zero. Math.round alone rounds
+     * negative ties up, -2.5 to -2.
+     */
+    static long roundHalfUp(double scaled) {
+        return scaled < 0 ? -Math.round(-scaled) : Math.round(scaled);
+    }
+
+    /*
+     * toDataFrame
+     *
+     * DatFrame.toDataFrame with the numeric columns this policy
+     * rounds seen through a rounding list view. Whether the
+     * library writes the rounded cells any shorter depends on its
+     * own formatting; compact and shortest do not apply here.
+     */
+    public RData toDataFrame(DatFrame frame, String name) {
+        List<RData> dfValues = new ArrayList<RData>();
+        for(DatColumn column : frame.getColumns()) {
+            int columnDecimals = getDecimals(column.getName());
+            switch(column.getType()) {
+                case LOGICAL:
+                    dfValues.add(RDataFactory.createBooleanVector(
+                        column.getName(), column.asBooleanList()));
+                    break;
+                case STRING:
+                    dfValues.add(RDataFactory.createStringVector(
+                        column.getName(), column.asStringList()));
+                    break;
+                case DOUBLE:
+                    dfValues.add(RDataFactory.createNumericVector(
+                        column.getName(), columnDecimals < 0 ?
+                            column.asDoubleList() :
+                            rounded(column.asDoubleList(), columnDecimals)));
+                    break;
+                default:
+                    dfValues.add(RDataFactory.createNumericVector(
+                        column.getName(), column.asDoubleList()));
+            }
+        }
+        return RDataFactory.createDataFrame(name, dfValues);
+    }
+
+    public String toString() {
+        return "NumericEncodingPolicy [ compact=" + compact + ", shortest=" +
+            shortest + ", decimals=" + decimals + ", columns=" +
+            columnDecimals + " ]";
+    }
+
+    private static List<Double> rounded(final List<Double> values,
+                                        final int decimals) {
+        return new AbstractList<Double>() {
+            public Double get(int index) {
+                Double value = values.get(index);
+                return value == null ? null : round(value, decimals);
+            }
+
+            public int size() {
+                return values.size();
+            }
+        };
+    }
+
+    private static int checkDecimals(int decimals) {
+        if(decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("decimals=" + decimals +
+                                        ", at most " + MAX_DECIMALS);
+        }
+        return Math.max(decimals, -1);
+    }
+
+}
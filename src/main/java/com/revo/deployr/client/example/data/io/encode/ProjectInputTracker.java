@@ -0,0 +1,421 @@
+/*
+ * ProjectInputTracker.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.params.*;
+import java.util.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.charset.Charset;
+import java.security.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ProjectInputTracker
+ *
+ * Sends only the rinputs a stateful RProject does not already
+ * hold. For each project the tracker remembers the name and a
+ * content hash of every input pushed through it; an execution
+ * made through the tracker drops the inputs whose hash is
+ * unchanged and sends the rest.
+ *
+ * Before skipping anything the tracker checks, with one small
+ * executeCode call, that the skipped objects still exist in the
+ * workspace, so a project recycled or cleared behind its back is
+ * resynced on the next execution. The check returns its answer
+ * through one hidden workspace object, .inputTrackerPresent, which
+ * ls() does not list and each check replaces; exclude it when
+ * saving the workspace. Scripts are expected to treat tracked
+ * inputs as read-only: an object modified in place under the same
+ * name is not detected.
+ *
+ * Vectors, strings and data frames are hashed over their values,
+ * other RData types, such as factors, dates and matrices, over the
+ * values of their getters. Inputs the tracker can not hash are
+ * always sent, logged once per type.
+ */
+public class ProjectInputTracker {
+
+    private static Logger log = Logger.getLogger(ProjectInputTracker.class);
+
+    private static final String PRESENT = ".inputTrackerPresent";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Set<String> unhashable = new HashSet<String>();
+
+    private final Map<String, Map<String, String>> projects =
+                            new HashMap<String, Map<String, String>>();
+    private boolean verify = true;
+
+    /*
+     * Whether skipped inputs are checked against the workspace
+     * first. Only turn off when nothing else touches the project.
+     */
+    public ProjectInputTracker setVerify(boolean verify) {
+        this.verify = verify;
+        return this;
+    }
+
+    /*
+     * executeScript
+     *
+     * RProject.executeScript with options.rinputs reduced to the
+     * inputs the project does not hold. options.rinputs is left
+     * as given.
+     */
+    public RProjectExecution executeScript(RProject rProject, String filename,
+                            String directory, String author, String version,
+                            ProjectExecutionOptions options)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+
+        List<RData> rinputs = options.rinputs;
+        Delta delta = delta(rProject, rinputs);
+        options.rinputs = delta.send;
+        boolean done = false;
+        try {
+            RProjectExecution exec = rProject.executeScript(filename,
+                                    directory, author, version, options);
+            done = true;
+            return exec;
+        } finally {
+            options.rinputs = rinputs;
+            settle(delta, done);
+        }
+    }
+
+    /*
+     * executeCode
+     *
+     * RProject.executeCode with options.rinputs reduced, see
+     * executeScript.
+     */
+    public RProjectExecution executeCode(RProject rProject, String code,
+                                         ProjectExecutionOptions options)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+
+        List<RData> rinputs = options.rinputs;
+        Delta delta = delta(rProject, rinputs);
+        options.rinputs = delta.send;
+        boolean done = false;
+        try {
+            RProjectExecution exec = rProject.executeCode(code, options);
+            done = true;
+            return exec;
+        } finally {
+            options.rinputs = rinputs;
+            settle(delta, done);
+        }
+    }
+
+    /*
+     * Recycles rProject, dropping everything tracked for it.
+     */
+    public RProject recycle(RProject rProject)
+            throws RClientException, RSecurityException {
+        forget(rProject);
+        return rProject.recycle();
+    }
+
+    /*
+     * Drops everything tracked for rProject, the next execution
+     * sends all of its inputs.
+     */
+    public synchronized void forget(RProject rProject) {
+        projects.remove(rProject.about().id);
+    }
+
+    /*
+     * Names of the inputs currently tracked for rProject.
+     */
+    public synchronized Set<String> getTracked(RProject rProject) {
+        Map<String, String> pushed = projects.get(rProject.about().id);
+        return pushed == null ? Collections.<String>emptySet() :
+                        new TreeSet<String>(pushed.keySet());
+    }
+
+    private Delta delta(RProject rProject, List<RData> rinputs)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+
+        Delta delta = new Delta(rProject.about().id);
+        if(rinputs == null) {
+            return delta;
+        }
+
+        Map<String, RData> skipped = new LinkedHashMap<String, RData>();
+        Map<String, String> skippedHashes = new HashMap<String, String>();
+        synchronized(this) {
+            Map<String, String> pushed = projects.get(delta.projectId);
+            for(RData input : rinputs) {
+                String hash = hashOf(input);
+                if(hash != null && pushed != null &&
+                                    hash.equals(pushed.get(input.getName()))) {
+                    skipped.put(input.getName(), input);
+                    skippedHashes.put(input.getName(), hash);
+                } else {
+                    delta.send.add(input);
+                    delta.hashes.put(input.getName(), hash);
+                }
+            }
+        }
+
+        if(verify && !skipped.isEmpty()) {
+            Set<String> present = present(rProject, skipped.keySet());
+            for(Map.Entry<String, RData> entry : skipped.entrySet()) {
+                if(!present.contains(entry.getKey())) {
+                    delta.send.add(entry.getValue());
+                    delta.hashes.put(entry.getKey(),
+                                        skippedHashes.get(entry.getKey()));
+                }
+            }
+            if(present.size() < skipped.size()) {
+                log.debug("Workspace lost tracked inputs, resyncing, project=" +
+                    delta.projectId + ", missing=" + (skipped.size() -
+                                                            present.size()));
+            }
+        }
+
+        log.debug("Input delta, project=" + delta.projectId + ", inputs=" +
+                rinputs.size() + ", sent=" + delta.send.size());
+        return delta;
+    }
+
+    /*
+     * Records what an execution pushed. After a failed execution
+     * the workspace state of the inputs sent is unknown, they are
+     * dropped and sent again next time.
+     */
+    private synchronized void settle(Delta delta, boolean done) {
+        Map<String, String> pushed = projects.get(delta.projectId);
+        if(pushed == null) {
+            pushed = new HashMap<String, String>();
+            projects.put(delta.projectId, pushed);
+        }
+        for(Map.Entry<String, String> entry : delta.hashes.entrySet()) {
+            if(done && entry.getValue() != null) {
+                pushed.put(entry.getKey(), entry.getValue());
+            } else {
+                pushed.remove(entry.getKey());
+            }
+        }
+    }
+
+    /*
+     * Names, of those given, that exist in the project workspace.
+     */
+    private static Set<String> present(RProject rProject, Set<String> names)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+
+        StringBuilder code = new StringBuilder(PRESENT +
+                                        " <- local(intersect(c(");
+        boolean first = true;
+        for(String name : names) {
+            if(!first) {
+                code.append(',');
+            }
+            code.append('\'').append(name.replace("\\", "\\\\")
+                                    .replace("'", "\\'")).append('\'');
+            first = false;
+        }
+        code.append("), ls(globalenv(), all.names = TRUE)))");
+
+        ProjectExecutionOptions options = new ProjectExecutionOptions();
+        options.routputs = Arrays.asList(PRESENT);
+        RProjectExecution exec = rProject.executeCode(code.toString(), options);
+
+        Set<String> present = new HashSet<String>();
+        List<RData> objects = exec.about().workspaceObjects;
+        if(objects != null) {
+            for(RData rData : objects) {
+                if(rData instanceof RStringVector &&
+                        ((RStringVector) rData).getValue() != null) {
+                    present.addAll(((RStringVector) rData).getValue());
+                } else
+                if(rData instanceof RString &&
+                        ((RString) rData).getValue() != null) {
+                    present.add(((RString) rData).getValue());
+                }
+            }
+        }
+        return present;
+    }
+
+    /*
+     * hashOf
+     *
+     * SHA-256 over the name, type and values of input, or null
+     * for an RData type that is not understood.
+     */
+    static String hashOf(RData input) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            if(!update(md, input)) {
+                return null;
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for(byte b : md.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException nsaex) {
+            return null;
+        }
+    }
+
+    private static boolean update(MessageDigest md, RData input) {
+
+        updateString(md, input.getClass().getName());
+        updateString(md, input.getName());
+
+        if(input instanceof RDataFrame) {
+            List<RData> columns = ((RDataFrame) input).getValue();
+            for(RData column : columns) {
+                if(!update(md, column)) {
+                    return false;
+                }
+            }
+        } else
+        if(input instanceof RNumericVector) {
+            ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+            for(Double value : ((RNumericVector) input).getValue()) {
+                if(buf.remaining() < 9) {
+                    md.update(buf.array(), 0, buf.position());
+                    buf.clear();
+                }
+                if(value == null) {
+                    buf.put((byte) 0);
+                } else {
+                    buf.put((byte) 1).putLong(Double.doubleToLongBits(value));
+                }
+            }
+            md.update(buf.array(), 0, buf.position());
+        } else
+        if(input instanceof RBooleanVector) {
+            for(Boolean value : ((RBooleanVector) input).getValue()) {
+                md.update((byte) (value == null ? 0 : value ? 2 : 1));
+            }
+        } else
+        if(input instanceof RStringVector) {
+            for(String value : ((RStringVector) input).getValue()) {
+                updateString(md, value);
+            }
+        } else
+        if(input instanceof RString) {
+            updateString(md, ((RString) input).getValue());
+        } else {
+            return updateGetters(md, input);
+        }
+        return true;
+    }
+
+    /*
+     * Any other RData hashed over the values of its public getters,
+     * in name order. False, logged once per type, when a value has
+     * no stable text form.
+     */
+    private static boolean updateGetters(MessageDigest md, RData input) {
+        Method[] methods = input.getClass().getMethods();
+        Arrays.sort(methods, new Comparator<Method>() {
+            public int compare(Method m1, Method m2) {
+                return m1.getName().compareTo(m2.getName());
+            }
+        });
+        try {
+            for(Method method : methods) {
+                String name = method.getName();
+                if(method.getParameterTypes().length != 0 ||
+                        method.getDeclaringClass() == Object.class ||
+                        name.equals("getName") ||
+                        !(name.startsWith("get") || name.startsWith("is"))) {
+                    continue;
+                }
+                updateString(md, name);
+                if(!updateValue(md, method.invoke(input))) {
+                    return unhashable(input, name);
+                }
+            }
+        } catch(Exception ex) {
+            return unhashable(input, ex.toString());
+        }
+        return true;
+    }
+
+    private static boolean updateValue(MessageDigest md, Object value)
+            throws NoSuchMethodException {
+        if(value == null) {
+            updateString(md, null);
+        } else
+        if(value instanceof Date) {
+            updateString(md, "date:" + ((Date) value).getTime());
+        } else
+        if(value instanceof Collection) {
+            Collection<?> items = (Collection<?>) value;
+            updateString(md, "list:" + items.size());
+            for(Object item : items) {
+                if(!updateValue(md, item)) {
+                    return false;
+                }
+            }
+        } else
+        if(value.getClass().getMethod("toString").getDeclaringClass()
+                                                    == Object.class) {
+            return false;
+        } else {
+            updateString(md, value.getClass().getName() + ":" + value);
+        }
+        return true;
+    }
+
+    private static boolean unhashable(RData input, String reason) {
+        String type = input.getClass().getName();
+        synchronized(unhashable) {
+            if(unhashable.add(type)) {
+                log.debug("Input type can not be tracked, always sent, " +
+                                "type=" + type + ", reason=" + reason);
+            }
+        }
+        return false;
+    }
+
+    private static void updateString(MessageDigest md, String value) {
+        if(value == null) {
+            md.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        md.update((byte) 1);
+        md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        md.update(bytes);
+    }
+
+    /*
+     * The inputs one execution sends, with their hashes.
+     */
+    private static class Delta {
+
+        final String projectId;
+        final List<RData> send = new ArrayList<RData>();
+        final Map<String, String> hashes = new HashMap<String, String>();
+
+        Delta(String projectId) {
+            this.projectId = projectId;
+        }
+    }
+
+}
@@ -0,0 +1,437 @@
+/*
+ * RDataJsonWriter.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.encode;
+
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.*;
+import java.io.*;
+
+/*
+ * RDataJsonWriter
+ *
+ * Writes the DeployR JSON encoding of a DatFrame, the encoding
+ * RDataFactory.createDataFrame produces for the "inputs" call
+ * parameter, straight from the column buffers to a Writer.
+ *
+ * No RData, boxed list or encoded String of the frame is built.
+ * Cells are formatted one at a time into a reusable char buffer
+ * that is handed to the Writer whenever it fills, so the memory
+ * used by encoding is the same for any size of frame.
+ *
+ * NA cells are encoded as null. JSON has no literal for Inf or
+ * NaN, non-finite numeric cells are encoded as null as well.
+ *
+ * Numeric cells are formatted under a NumericEncodingPolicy, by
+ * default NumericEncodingPolicy.getDefault(). With an
+ * EncodingReport set, the payload of every numeric vector is
+ * added to it.
+ */
+public class RDataJsonWriter {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private long written;
+    private int members = -1;
+    private NumericEncodingPolicy policy = NumericEncodingPolicy.getDefault();
+    private EncodingReport report;
+
+    public RDataJsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public RDataJsonWriter setPolicy(NumericEncodingPolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /*
+     * Report the numeric vectors written from now on are added
+     * to, null for none. Measuring the baseline formats every
+     * numeric cell a second time.
+     */
+    public RDataJsonWriter setReport(EncodingReport report) {
+        this.report = report;
+        return this;
+    }
+
+    /*
+     * Number of chars written so far, including any still held
+     * in the buffer.
+     */
+    public long getCharCount() {
+        return written + pos;
+    }
+
+    /*
+     * writeInputs
+     *
+     * Writes a complete "inputs" object holding frame as the
+     * data.frame name, for example:
+     *
+     *   {"hip":{"type":"dataframe","value":[
+     *     {"name":"HIP","type":"vector","rclass":"numeric",
+     *      "value":[2,38,...]}, ...]}}
+     */
+    public void writeInputs(String name, DatFrame frame) throws IOException {
+        write('{');
+        writeString(name);
+        write(':');
+        writeDataFrame(frame);
+        write('}');
+        flush();
+    }
+
+    /*
+     * Opens an "inputs" object, its members follow as written by
+     * writeMember or EncodedInputCache.writeMember until
+     * endInputs.
+     */
+    public void startInputs() throws IOException {
+        write('{');
+        members = 0;
+    }
+
+    public void endInputs() throws IOException {
+        write('}');
+        members = -1;
+        flush();
+    }
+
+    /*
+     * Writes frame as the "inputs" object member name.
+     */
+    public void writeMember(String name, DatFrame frame) throws IOException {
+        beginMember();
+        writeString(name);
+        write(':');
+        writeDataFrame(frame);
+    }
+
+    /*
+     * Writes the character value as the "inputs" object member
+     * name, the encoding of RDataFactory.createString.
+     */
+    public void writeMember(String name, String value) throws IOException {
+        beginMember();
+        writeString(name);
+        write(":{\"type\":\"primitive\",\"rclass\":\"character\",\"value\":");
+        if(value == null) {
+            write("null");
+        } else {
+            writeString(value);
+        }
+        write('}');
+    }
+
+    public void writeDataFrame(DatFrame frame) throws IOException {
+        writeDataFrame(frame, 0, frame.getRowCount());
+    }
+
+    /*
+     * Writes rows [fromRow, toRow) of frame as a data.frame.
+     */
+    public void writeDataFrame(DatFrame frame, int fromRow, int toRow)
+                                                    throws IOException {
+        write("{\"type\":\"dataframe\",\"value\":[");
+        boolean first = true;
+        for(DatColumn column : frame.getColumns()) {
+            if(!first) {
+                write(',');
+            }
+            writeVector(column, fromRow, toRow);
+            first = false;
+        }
+        write("]}");
+    }
+
+    public void writeVector(DatColumn column, int fromRow, int toRow)
+                                                    throws IOException {
+
+        write("{\"name\":");
+        writeString(column.getName());
+        write(",\"type\":\"vector\",\"rclass\":\"");
+        write(rclassOf(column.getType()));
+        write("\",\"value\":[");
+
+        ColumnType type = column.getType();
+        int decimals = policy.getDecimals(column.getName());
+        boolean measure = report != null &&
+                (type == ColumnType.INTEGER || type == ColumnType.DOUBLE);
+        long start = getCharCount();
+        long baseline = 0;
+
+        for(int row = fromRow; row < toRow; row++) {
+            if(row > fromRow) {
+                write(',');
+            }
+            if(column.isNA(row)) {
+                write("null");
+                baseline += 4;
+                continue;
+            }
+            switch(type) {
+                case LOGICAL:
+                    write(column.getLogical(row) ? "true" : "false");
+                    break;
+                case INTEGER:
+                    writeLong(column.getInt(row));
+                    if(!policy.isCompact()) {
+                        write(".0");
+                    }
+                    if(measure) {
+                        baseline += baselineChars(column.getInt(row));
+                    }
+                    break;
+                case DOUBLE:
+                    writeDouble(column.getDouble(row), decimals);
+                    if(measure) {
+                        baseline += baselineChars(column.getDouble(row));
+                    }
+                    break;
+                default:
+                    writeString(column.getString(row));
+            }
+        }
+        if(measure) {
+            int cells = toRow - fromRow;
+            report.add(column.getName(), cells,
+                baseline + Math.max(cells - 1, 0), getCharCount() - start);
+        }
+        write("]}");
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, pos);
+        written += pos;
+        pos = 0;
+        out.flush();
+    }
+
+    private static String rclassOf(ColumnType type) {
+        switch(type) {
+            case LOGICAL:
+                return "logical";
+            case STRING:
+                return "character";
+            default:
+                return "numeric";
+        }
+    }
+
+    /*
+     * writeDouble
+     *
+     * Formats value under the policy, rounded to decimals places
+     * when not negative, see NumericEncodingPolicy.
+     */
+    private void writeDouble(double value, int decimals) throws IOException {
+        if(Double.isNaN(value) || Double.isInfinite(value)) {
+            write("null");
+            return;
+        }
+        if(policy.isCompact() && value == Math.rint(value) &&
+                                        Math.abs(value) < 1e15) {
+            writeLong((long) value);
+            return;
+        }
+        double[] pow10 = NumericEncodingPolicy.POW10;
+        if(decimals >= 0) {
+            double scaled = value * pow10[decimals];
+            if(Math.abs(scaled) < NumericEncodingPolicy.MAX_SCALED) {
+                writeScaled(NumericEncodingPolicy.roundHalfUp(scaled),
+                                                            decimals);
+                return;
+            }
+        } else
+        if(policy.isShortest() && Math.abs(value) >= 1e-3) {
+            for(int places = 1; places < pow10.length; places++) {
+                double scaled = value * pow10[places];
+                if(Math.abs(scaled) >= NumericEncodingPolicy.MAX_SCALED) {
+                    break;
+                }
+                long digits = Math.round(scaled);
+                if(digits / pow10[places] == value) {
+                    writeScaled(digits, places);
+                    return;
+                }
+            }
+        }
+        write(Double.toString(value));
+    }
+
+    /*
+     * Writes scaled / 10^decimals as a fixed decimal without
+     * trailing zeros, scaled below 2^53 in magnitude.
+     */
+    private void writeScaled(long scaled, int decimals) throws IOException {
+        while(decimals > 0 && scaled % 10 == 0) {
+            scaled /= 10;
+            decimals--;
+        }
+        if(decimals == 0) {
+            writeLong(scaled);
+            if(!policy.isCompact()) {
+                write(".0");
+            }
+            return;
+        }
+        if(BUFFER_SIZE - pos < 40) {
+            drain();
+        }
+        if(scaled < 0) {
+            buffer[pos++] = '-';
+            scaled = -scaled;
+        }
+        int start = pos;
+        int digits = 0;
+        do {
+            buffer[pos++] = (char) ('0' + (scaled % 10));
+            scaled /= 10;
+            if(++digits == decimals) {
+                buffer[pos++] = '.';
+            }
+        } while(scaled != 0 || digits <= decimals);
+        for(int i = start, j = pos - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+    }
+
+    /*
+     * Chars Double.toString takes for value, as the client
+     * library writes a numeric cell.
+     */
+    private static int baselineChars(double value) {
+        if(Double.isNaN(value) || Double.isInfinite(value)) {
+            return 4;
+        }
+        if(value == Math.rint(value) && Math.abs(value) < 1e7) {
+            return baselineChars((long) value);
+        }
+        return Double.toString(value).length();
+    }
+
+    private static int baselineChars(long value) {
+        int chars = value < 0 ? 4 : 3;
+        for(long rest = Math.abs(value); rest >= 10; rest /= 10) {
+            chars++;
+        }
+        return chars;
+    }
+
+    /*
+     * Formats value directly into the buffer.
+     */
+    private void writeLong(long value) throws IOException {
+        if(value == Long.MIN_VALUE) {
+            write(Long.toString(value));
+            return;
+        }
+        if(BUFFER_SIZE - pos < 20) {
+            drain();
+        }
+        if(value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while(value != 0);
+        for(int i = start, j = pos - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        write('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    write("\\\"");
+                    break;
+                case '\\':
+                    write("\\\\");
+                    break;
+                case '\n':
+                    write("\\n");
+                    break;
+                case '\r':
+                    write("\\r");
+                    break;
+                case '\t':
+                    write("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        write("\\u00");
+                        write(Character.forDigit(c >> 4, 16));
+                        write(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        write(c);
+                    }
+            }
+        }
+        write('"');
+    }
+
+    private void write(String s) throws IOException {
+        for(int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if(pos == BUFFER_SIZE) {
+            drain();
+        }
+        buffer[pos++] = c;
+    }
+
+    /*
+     * Separates a member from the one before it within
+     * startInputs and endInputs.
+     */
+    void beginMember() throws IOException {
+        if(members > 0) {
+            write(',');
+        }
+        if(members >= 0) {
+            members++;
+        }
+    }
+
+    /*
+     * Copies chars of JSON encoded earlier verbatim.
+     */
+    void writeRaw(char[] chars, int off, int len) throws IOException {
+        drain();
+        out.write(chars, off, len);
+        written += len;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, pos);
+        written += pos;
+        pos = 0;
+    }
+
+}
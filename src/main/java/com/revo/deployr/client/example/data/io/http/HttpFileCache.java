@@ -0,0 +1,339 @@
+/*
+ * HttpFileCache.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.http;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * HttpFileCache
+ *
+ * On-disk cache for external data files fetched over HTTP, such
+ * as the Hipparcos star dataset at HIP_DAT_URL.
+ *
+ * Each entry stores the response body next to a small properties
+ * file holding the URL, ETag and Last-Modified validators. Later
+ * fetches revalidate with If-None-Match / If-Modified-Since and a
+ * 304 Not Modified response is served straight from disk. When the
+ * total size of the cached bodies exceeds the configured limit,
+ * the least recently used entries are evicted. A new body replaces
+ * the old one only after the old validators are removed.
+ *
+ * Configuration for the default cache:
+ *   -Dcache.dir=/path     (default ${java.io.tmpdir}/example-data-io-cache)
+ *   -Dcache.max.mb=1024   (default 1024)
+ *   -Dcache.max.age.ms=0  skip revalidation for entries validated
+ *                         within this many milliseconds (default 0)
+ */
+public class HttpFileCache {
+
+    private static Logger log = Logger.getLogger(HttpFileCache.class);
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+
+    private static final String META_URL = "url";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_VALIDATED = "validated";
+    private static final String META_ACCESSED = "accessed";
+
+    private static HttpFileCache defaultCache;
+
+    private final File directory;
+    private final long maxBytes;
+    private long maxAgeMillis;
+    private int connectTimeout = 30000;
+    private int readTimeout = 60000;
+
+    public HttpFileCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static synchronized HttpFileCache getDefault() {
+        if(defaultCache == null) {
+            File dir = new File(System.getProperty("cache.dir",
+                new File(System.getProperty("java.io.tmpdir"),
+                        "example-data-io-cache").getPath()));
+            long maxMb = Long.getLong("cache.max.mb", 1024);
+            defaultCache = new HttpFileCache(dir, maxMb * 1024 * 1024);
+            defaultCache.setMaxAge(Long.getLong("cache.max.age.ms", 0));
+        }
+        return defaultCache;
+    }
+
+    public HttpFileCache setMaxAge(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    public HttpFileCache setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /*
+     * Returns an InputStream over the cached body for url,
+     * fetching or revalidating it first as required.
+     */
+    public InputStream open(URL url) throws IOException {
+        return new BufferedInputStream(new FileInputStream(fetch(url)));
+    }
+
+    /*
+     * fetch
+     *
+     * Returns the local file holding the body for url. A cached
+     * entry is revalidated unless it was validated within the
+     * max age. When the origin can not be reached a cached copy,
+     * if any, is served stale.
+     */
+    public synchronized File fetch(URL url) throws IOException {
+
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cache directory unavailable, " +
+                                                "dir=" + directory);
+        }
+
+        String key = keyFor(url);
+        File body = new File(directory, key + BODY_SUFFIX);
+        File metaFile = new File(directory, key + META_SUFFIX);
+        Properties meta = body.isFile() ? readMeta(metaFile) : null;
+        long now = System.currentTimeMillis();
+
+        if(meta != null && maxAgeMillis > 0 &&
+                now - getLong(meta, META_VALIDATED) < maxAgeMillis) {
+            touch(meta, metaFile, now, false);
+            return body;
+        }
+
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setConnectTimeout(connectTimeout);
+            conn.setReadTimeout(readTimeout);
+            if(meta != null) {
+                String etag = meta.getProperty(META_ETAG);
+                if(etag != null) {
+                    conn.setRequestProperty("If-None-Match", etag);
+                }
+                long lastModified = getLong(meta, META_LAST_MODIFIED);
+                if(lastModified > 0) {
+                    conn.setIfModifiedSince(lastModified);
+                }
+            }
+
+            int status = conn.getResponseCode();
+
+            if(status == HttpURLConnection.HTTP_NOT_MODIFIED && meta != null) {
+                log.debug("Cache revalidated, url=" + url);
+                touch(meta, metaFile, now, true);
+                return body;
+            }
+
+            if(status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected HTTP status=" + status +
+                                                    ", url=" + url);
+            }
+
+            File tmp = File.createTempFile(key, ".tmp", directory);
+            InputStream in = conn.getInputStream();
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                IOUtils.copyLarge(in, out);
+            } catch(IOException ioex) {
+                IOUtils.closeQuietly(out);
+                tmp.delete();
+                throw ioex;
+            } finally {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+            }
+
+            /*
+             * The old validators go before the body is swapped, so
+             * the new body never sits next to them: should the new
+             * metadata fail to be written, the next fetch is an
+             * unconditional GET rather than a revalidation that may
+             * answer 304 for the old version.
+             */
+            if(metaFile.exists() && !metaFile.delete()) {
+                tmp.delete();
+                throw new IOException("Cache metadata not invalidated, " +
+                                                    "file=" + metaFile);
+            }
+            body.delete();
+            if(!tmp.renameTo(body)) {
+                tmp.delete();
+                throw new IOException("Cache store failed, file=" + body);
+            }
+
+            Properties stored = new Properties();
+            stored.setProperty(META_URL, url.toString());
+            String etag = conn.getHeaderField("ETag");
+            if(etag != null) {
+                stored.setProperty(META_ETAG, etag);
+            }
+            if(conn.getLastModified() > 0) {
+                stored.setProperty(META_LAST_MODIFIED,
+                        Long.toString(conn.getLastModified()));
+            }
+            touch(stored, metaFile, now, true);
+            log.debug("Cache stored, url=" + url + ", bytes=" + body.length());
+
+            evict(key);
+            return body;
+
+        } catch(IOException ioex) {
+            if(meta != null && body.isFile()) {
+                log.warn("Cache revalidation failed, serving stale copy, " +
+                                        "url=" + url + ", ex=" + ioex);
+                return body;
+            }
+            throw ioex;
+        } finally {
+            if(conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /*
+     * Evicts least recently used entries, other than the entry
+     * for keep, until the cached bodies fit within maxBytes.
+     */
+    private void evict(String keep) {
+
+        File[] metaFiles = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(META_SUFFIX);
+            }
+        });
+        if(metaFiles == null) {
+            return;
+        }
+
+        List<Entry> entries = new ArrayList<Entry>();
+        long total = 0;
+        for(File metaFile : metaFiles) {
+            String name = metaFile.getName();
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            File body = new File(directory, key + BODY_SUFFIX);
+            Properties meta = readMeta(metaFile);
+            long accessed = meta == null ? 0 : getLong(meta, META_ACCESSED);
+            entries.add(new Entry(key, body, metaFile, accessed));
+            total += body.length();
+        }
+
+        Collections.sort(entries);
+
+        for(Entry entry : entries) {
+            if(total <= maxBytes) {
+                break;
+            }
+            if(entry.key.equals(keep)) {
+                continue;
+            }
+            total -= entry.body.length();
+            entry.body.delete();
+            entry.metaFile.delete();
+            log.debug("Cache evicted, key=" + entry.key);
+        }
+    }
+
+    private static void touch(Properties meta, File metaFile,
+                              long now, boolean validated) {
+        meta.setProperty(META_ACCESSED, Long.toString(now));
+        if(validated) {
+            meta.setProperty(META_VALIDATED, Long.toString(now));
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(metaFile);
+            meta.store(out, null);
+        } catch(IOException ioex) {
+            log.warn("Cache metadata write failed, file=" + metaFile +
+                                                    ", ex=" + ioex);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static Properties readMeta(File metaFile) {
+        if(!metaFile.isFile()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(metaFile);
+            Properties meta = new Properties();
+            meta.load(in);
+            return meta;
+        } catch(IOException ioex) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static long getLong(Properties meta, String name) {
+        try {
+            return Long.parseLong(meta.getProperty(name, "0"));
+        } catch(NumberFormatException nfex) {
+            return 0;
+        }
+    }
+
+    private static String keyFor(URL url) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(url.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch(Exception ex) {
+            throw new IllegalStateException("SHA-1 unavailable, ex=" + ex);
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        final String key;
+        final File body;
+        final File metaFile;
+        final long accessed;
+
+        Entry(String key, File body, File metaFile, long accessed) {
+            this.key = key;
+            this.body = body;
+            this.metaFile = metaFile;
+            this.accessed = accessed;
+        }
+
+        public int compareTo(Entry other) {
+            return accessed < other.accessed ? -1 :
+                        (accessed == other.accessed ? 0 : 1);
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * RestSession.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.http;
+
+import com.revo.deployr.client.example.data.io.encode.FormUrlEncodingWriter;
+import java.util.*;
+import java.util.regex.*;
+import java.io.*;
+import java.net.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * RestSession
+ *
+ * An authenticated session with the DeployR API called directly
+ * over HTTP, as StreamedDataInEncodedDataOut does, which can
+ * outlive the JVM through a SessionStore.
+ *
+ * The session cookie saved by an earlier process is used as is,
+ * it is validated lazily by the first call made with it: when
+ * that call is refused as unauthenticated the session logs in,
+ * saves the new cookie and repeats the call once. A process
+ * started within the server session timeout of the last one so
+ * skips the /r/user/login round trip.
+ *
+ * The client library keeps its HTTP session inside RClient, with
+ * no means to adopt a saved one, so sessions resumed here serve
+ * direct API calls only.
+ */
+public class RestSession {
+
+    private static Logger log = Logger.getLogger(RestSession.class);
+
+    private static final Pattern HTTP_COOKIE =
+                        Pattern.compile("\"httpcookie\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ERROR_CODE =
+                        Pattern.compile("\"errorCode\"\\s*:\\s*401\\b");
+
+    private final String endpoint;
+    private final String username;
+    private final String password;
+    private final SessionStore store;
+    private int connectTimeout = 30000;
+    private int readTimeout = 300000;
+    private String cookie;
+    private boolean resumed;
+    private int logins;
+
+    /*
+     * store may be null, the session then lasts as long as this
+     * object.
+     */
+    public RestSession(String endpoint, String username, String password,
+                       SessionStore store) {
+        this.endpoint = endpoint;
+        this.username = username;
+        this.password = password;
+        this.store = store;
+    }
+
+    public RestSession setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /*
+     * execute
+     *
+     * POSTs params, plus format=json, to the API call at path,
+     * for example "/r/repository/script/execute", and returns the
+     * JSON response. Throws IOException for an HTTP error status
+     * or a response with "success":false.
+     */
+    public synchronized String execute(String path, Map<String, String> params)
+                                                        throws IOException {
+        boolean fresh = false;
+        if(cookie == null) {
+            cookie = store == null ? null : store.get(endpoint, username);
+            resumed = cookie != null;
+            if(cookie == null) {
+                login();
+                fresh = true;
+            }
+        }
+
+        Response response = post(path, params, cookie);
+        if(response.isUnauthenticated() && !fresh) {
+            log.debug("Session expired, logging in again, user=" + username +
+                                    ", endpoint=" + endpoint);
+            resumed = false;
+            login();
+            response = post(path, params, cookie);
+        }
+        return response.check(path);
+    }
+
+    /*
+     * True when the session in use was resumed from the store
+     * rather than logged in by this process.
+     */
+    public synchronized boolean isResumed() {
+        return cookie != null && resumed;
+    }
+
+    /*
+     * Logins made by this session, 0 when every call ran on a
+     * resumed session.
+     */
+    public synchronized int getLoginCount() {
+        return logins;
+    }
+
+    /*
+     * Ends the server session and forgets it. A session meant to
+     * be resumed by the next process is simply left open.
+     */
+    public synchronized void logout() throws IOException {
+        if(cookie == null) {
+            return;
+        }
+        try {
+            post("/r/user/logout", new HashMap<String, String>(), cookie);
+        } finally {
+            cookie = null;
+            if(store != null) {
+                store.remove(endpoint, username);
+            }
+        }
+    }
+
+    private void login() throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("username", username);
+        params.put("password", password);
+        Response response = post("/r/user/login", params, null);
+        response.check("/r/user/login");
+
+        cookie = response.cookie;
+        if(cookie == null) {
+            Matcher matcher = HTTP_COOKIE.matcher(response.body);
+            if(matcher.find()) {
+                cookie = "JSESSIONID=" + matcher.group(1);
+            }
+        }
+        if(cookie == null) {
+            throw new IOException("Login response carried no session, " +
+                                            "endpoint=" + endpoint);
+        }
+        logins++;
+        if(store != null) {
+            store.put(endpoint, username, cookie);
+        }
+        log.debug("Logged in, user=" + username + ", endpoint=" + endpoint +
+                    ", ms=" + (System.currentTimeMillis() - start));
+    }
+
+    private Response post(String path, Map<String, String> params,
+                          String cookie) throws IOException {
+
+        HttpURLConnection conn = (HttpURLConnection)
+                            new URL(endpoint + path).openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(connectTimeout);
+            conn.setReadTimeout(readTimeout);
+            conn.setRequestProperty("Content-Type",
+                "application/x-www-form-urlencoded; charset=UTF-8");
+            if(cookie != null) {
+                conn.setRequestProperty("Cookie", cookie);
+            }
+
+            FormUrlEncodingWriter body =
+                new FormUrlEncodingWriter(conn.getOutputStream());
+            body.parameter("format", "json");
+            for(Map.Entry<String, String> param : params.entrySet()) {
+                body.parameter(param.getKey(), param.getValue());
+            }
+            body.close();
+
+            int status = conn.getResponseCode();
+            InputStream is = status < 400 ? conn.getInputStream()
+                                          : conn.getErrorStream();
+            String text = "";
+            try {
+                text = is == null ? "" : IOUtils.toString(is, "UTF-8");
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+            return new Response(status, text, sessionCookieOf(conn));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String sessionCookieOf(HttpURLConnection conn) {
+        List<String> cookies = conn.getHeaderFields().get("Set-Cookie");
+        if(cookies != null) {
+            for(String setCookie : cookies) {
+                if(setCookie.startsWith("JSESSIONID=")) {
+                    int end = setCookie.indexOf(';');
+                    return end < 0 ? setCookie : setCookie.substring(0, end);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static class Response {
+
+        final int status;
+        final String body;
+        final String cookie;
+
+        Response(int status, String body, String cookie) {
+            this.status = status;
+            this.body = body;
+            this.cookie = cookie;
+        }
+
+        boolean isUnauthenticated() {
+            return status == HttpURLConnection.HTTP_UNAUTHORIZED ||
+                            ERROR_CODE.matcher(body).find();
+        }
+
+        String check(String path) throws IOException {
+            if(status >= 400 || body.contains("\"success\":false")) {
+                throw new IOException("DeployR call failed, path=" + path +
+                    ", status=" + status + ", response=" +
+                    (body.length() > 512 ? body.substring(0, 512) : body));
+            }
+            return body;
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * SessionStore.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.http;
+
+import java.util.*;
+import java.io.*;
+import java.security.*;
+import javax.crypto.*;
+import javax.crypto.spec.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * SessionStore
+ *
+ * Local file holding the DeployR HTTP session cookie of each
+ * endpoint and user, so a new JVM can resume an authenticated
+ * session instead of logging in again, see RestSession.
+ *
+ * The file is encrypted at rest with AES/CBC and authenticated
+ * with HMAC-SHA256 under a random key kept in a separate key
+ * file, both readable by the owner only. A file that fails to
+ * decrypt or verify is treated as empty, the cost of any loss
+ * being one login. Processes sharing a store do not lock it, the
+ * last write wins.
+ *
+ * Saved cookies older than maxAgeMillis are not handed out, the
+ * server session having most likely timed out.
+ *
+ * The store is opt-in, getDefault() returns null unless set:
+ *   -Dsession.store=file             encrypted session file
+ *   -Dsession.store.key=file         key file (default <file>.key)
+ *   -Dsession.store.max.age.ms=n     cookie lifetime (default 3600000)
+ */
+public class SessionStore {
+
+    private static Logger log = Logger.getLogger(SessionStore.class);
+
+    private static final byte VERSION = 1;
+    private static final int IV_BYTES = 16;
+    private static final int MAC_BYTES = 32;
+    private static final int ENC_KEY_BYTES = 16;
+    private static final int MAC_KEY_BYTES = 32;
+
+    private static SessionStore defaultStore;
+    private static boolean defaultResolved;
+
+    private final File file;
+    private final File keyFile;
+    private long maxAgeMillis = 3600000;
+    private final SecureRandom random = new SecureRandom();
+
+    public SessionStore(File file, File keyFile) {
+        this.file = file;
+        this.keyFile = keyFile;
+    }
+
+    public static synchronized SessionStore getDefault() {
+        if(!defaultResolved) {
+            String path = System.getProperty("session.store");
+            if(path != null) {
+                defaultStore = new SessionStore(new File(path),
+                    new File(System.getProperty("session.store.key",
+                                                    path + ".key")));
+                defaultStore.setMaxAge(
+                    Long.getLong("session.store.max.age.ms", 3600000));
+            }
+            defaultResolved = true;
+        }
+        return defaultStore;
+    }
+
+    public SessionStore setMaxAge(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /*
+     * Saved session cookie of username on endpoint, or null.
+     */
+    public synchronized String get(String endpoint, String username) {
+        Properties sessions = load();
+        String id = idOf(endpoint, username);
+        String cookie = sessions.getProperty(id + ".cookie");
+        long saved = Long.parseLong(sessions.getProperty(id + ".saved", "0"));
+        if(cookie != null && System.currentTimeMillis() - saved > maxAgeMillis) {
+            log.debug("Saved session too old, user=" + username +
+                                        ", endpoint=" + endpoint);
+            return null;
+        }
+        return cookie;
+    }
+
+    public synchronized void put(String endpoint, String username,
+                                 String cookie) {
+        Properties sessions = load();
+        String id = idOf(endpoint, username);
+        sessions.setProperty(id + ".cookie", cookie);
+        sessions.setProperty(id + ".saved",
+                        Long.toString(System.currentTimeMillis()));
+        save(sessions);
+    }
+
+    public synchronized void remove(String endpoint, String username) {
+        Properties sessions = load();
+        String id = idOf(endpoint, username);
+        if(sessions.remove(id + ".cookie") != null) {
+            sessions.remove(id + ".saved");
+            save(sessions);
+        }
+    }
+
+    private Properties load() {
+        Properties sessions = new Properties();
+        if(!file.isFile()) {
+            return sessions;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] plain = decrypt(IOUtils.toByteArray(in));
+            sessions.load(new ByteArrayInputStream(plain));
+        } catch(Exception ex) {
+            log.warn("Session store unreadable, ignored, file=" + file +
+                                                        ", ex=" + ex);
+            sessions.clear();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return sessions;
+    }
+
+    /*
+     * Writes sessions to a temporary file renamed over the
+     * store, so a reader never sees a partial file.
+     */
+    private void save(Properties sessions) {
+        File tmp = null;
+        OutputStream out = null;
+        try {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            sessions.store(plain, null);
+            byte[] encrypted = encrypt(plain.toByteArray());
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            ownerOnly(tmp);
+            out = new FileOutputStream(tmp);
+            out.write(encrypted);
+            out.close();
+            out = null;
+            if(!tmp.renameTo(file)) {
+                file.delete();
+                tmp.renameTo(file);
+            }
+        } catch(Exception ex) {
+            log.warn("Session store write failed, file=" + file +
+                                                        ", ex=" + ex);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if(tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private byte[] encrypt(byte[] plain) throws Exception {
+        byte[] key = key();
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, encKeyOf(key), new IvParameterSpec(iv));
+        byte[] encrypted = cipher.doFinal(plain);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        out.write(iv);
+        out.write(encrypted);
+        out.write(macOf(key, out.toByteArray()));
+        return out.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] data) throws Exception {
+        if(data.length < 1 + IV_BYTES + MAC_BYTES || data[0] != VERSION) {
+            throw new GeneralSecurityException("Unknown session store format.");
+        }
+        byte[] key = key();
+        int macAt = data.length - MAC_BYTES;
+        byte[] mac = macOf(key, Arrays.copyOfRange(data, 0, macAt));
+        if(!MessageDigest.isEqual(mac,
+                        Arrays.copyOfRange(data, macAt, data.length))) {
+            throw new GeneralSecurityException("Session store failed " +
+                                                    "verification.");
+        }
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, encKeyOf(key),
+                        new IvParameterSpec(data, 1, IV_BYTES));
+        return cipher.doFinal(data, 1 + IV_BYTES, macAt - 1 - IV_BYTES);
+    }
+
+    private static SecretKeySpec encKeyOf(byte[] key) {
+        return new SecretKeySpec(key, 0, ENC_KEY_BYTES, "AES");
+    }
+
+    private static byte[] macOf(byte[] key, byte[] data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, ENC_KEY_BYTES, MAC_KEY_BYTES,
+                                                        "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+
+    /*
+     * Reads the key file, creating it with a new random key on
+     * first use.
+     */
+    private byte[] key() throws IOException {
+        int keyBytes = ENC_KEY_BYTES + MAC_KEY_BYTES;
+        if(!keyFile.isFile()) {
+            byte[] key = new byte[keyBytes];
+            random.nextBytes(key);
+            File dir = keyFile.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            File tmp = File.createTempFile(keyFile.getName(), ".tmp", dir);
+            OutputStream out = null;
+            try {
+                ownerOnly(tmp);
+                out = new FileOutputStream(tmp);
+                out.write(key);
+                out.close();
+                out = null;
+                if(!keyFile.exists()) {
+                    tmp.renameTo(keyFile);
+                }
+            } finally {
+                IOUtils.closeQuietly(out);
+                tmp.delete();
+            }
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(keyFile);
+            byte[] key = IOUtils.toByteArray(in);
+            if(key.length != keyBytes) {
+                throw new IOException("Session store key file malformed, " +
+                                                    "file=" + keyFile);
+            }
+            return key;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static void ownerOnly(File file) {
+        file.setReadable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(false, false);
+        file.setWritable(true, true);
+    }
+
+    private static String idOf(String endpoint, String username) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest((endpoint + '\0' + username)
+                                                .getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(32);
+            for(int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch(Exception ex) {
+            throw new IllegalStateException("SHA-256 unavailable.", ex);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * InputPath.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.plan;
+
+/*
+ * InputPath
+ *
+ * The ways a dataset can be made available to an R script on
+ * execution, each shown by one of the examples in this project.
+ *
+ * The cost model is a fixed overhead per execution plus a cost
+ * per KB moved. Both are starting points only, InputPlanner
+ * scales them by the ratio of measured to predicted cost.
+ */
+public enum InputPath {
+
+    /*
+     * Encoded data.frame on ProjectExecutionOptions.rinputs, the
+     * server decodes the JSON encoding into the workspace.
+     */
+    ENCODED(20, 0.5),
+
+    /*
+     * Data file sent with RProject.uploadFile, then read by the
+     * script from the working directory.
+     */
+    UPLOAD(150, 0.15),
+
+    /*
+     * Repository-managed data file copied into the working
+     * directory by ProjectExecutionOptions.preloadDirectory.
+     */
+    PRELOAD_DIRECTORY(50, 0.05),
+
+    /*
+     * Repository-managed binary R object file loaded into the
+     * workspace by ProjectExecutionOptions.preloadWorkspace.
+     */
+    PRELOAD_WORKSPACE(50, 0.01),
+
+    /*
+     * URL passed as an encoded string input, the script reads
+     * the data from the URL itself.
+     */
+    EXTERNAL_URL(300, 0.3);
+
+    private final double overheadMillis;
+    private final double millisPerKb;
+
+    private InputPath(double overheadMillis, double millisPerKb) {
+        this.overheadMillis = overheadMillis;
+        this.millisPerKb = millisPerKb;
+    }
+
+    double baseCost(long bytes) {
+        return overheadMillis + millisPerKb * bytes / 1024.0;
+    }
+
+}
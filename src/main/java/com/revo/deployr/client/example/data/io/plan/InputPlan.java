@@ -0,0 +1,67 @@
+/*
+ * InputPlan.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.plan;
+
+import java.util.*;
+
+/*
+ * InputPlan
+ *
+ * The InputPath chosen by the InputPlanner for an InputSource,
+ * with the predicted bytes and cost of every available path.
+ */
+public class InputPlan {
+
+    private final InputSource source;
+    private final InputPath path;
+    private final Map<InputPath, Long> bytes;
+    private final Map<InputPath, Long> millis;
+
+    InputPlan(InputSource source, InputPath path,
+              Map<InputPath, Long> bytes, Map<InputPath, Long> millis) {
+        this.source = source;
+        this.path = path;
+        this.bytes = Collections.unmodifiableMap(bytes);
+        this.millis = Collections.unmodifiableMap(millis);
+    }
+
+    public InputSource getSource() {
+        return source;
+    }
+
+    public InputPath getPath() {
+        return path;
+    }
+
+    public long getPredictedBytes() {
+        return bytes.get(path);
+    }
+
+    public long getPredictedMillis() {
+        return millis.get(path);
+    }
+
+    /*
+     * Predicted cost in milliseconds of every available path.
+     */
+    public Map<InputPath, Long> getCandidates() {
+        return millis;
+    }
+
+    public String toString() {
+        return "InputPlan [ path=" + path + ", bytes=" + getPredictedBytes() +
+            ", predicted=" + getPredictedMillis() + "ms, candidates=" +
+            millis + " ]";
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * InputPlanner.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.plan;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.factory.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import com.revo.deployr.client.example.data.io.encode.*;
+import java.util.*;
+import java.io.*;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullWriter;
+
+import org.apache.log4j.Logger;
+
+/*
+ * InputPlanner
+ *
+ * Picks the cheapest InputPath for an InputSource. For each path
+ * with a copy of the data available it estimates the bytes moved,
+ * the encoded size for ENCODED, the file size otherwise, and the
+ * cost in milliseconds from the InputPath cost model.
+ *
+ * After an execution record() compares the actual cost with the
+ * prediction and moves the scale of that path towards the ratio
+ * of the two, so predictions follow the measured cost of each
+ * path on this client, network and server. Scales are kept in a
+ * properties file so they carry over between runs.
+ *
+ * Only the scale of the path taken learns, so a path predicted
+ * too dear once would never be taken again to correct it. A path
+ * that was a candidate but not taken for exploreAfter plans in a
+ * row is therefore taken once instead of the cheapest, and its
+ * scale updated from what it really cost. The counts are kept in
+ * the properties file too.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dplanner.model=file   scales file (default
+ *                          <java.io.tmpdir>/example-data-io-planner.properties)
+ *   -Dplanner.explore=n    plans before a path not taken is retried
+ *                          (default 20, 0 never)
+ */
+public class InputPlanner {
+
+    private static Logger log = Logger.getLogger(InputPlanner.class);
+
+    private static final int SAMPLE_ROWS = 1000;
+    private static final double LEARNING_RATE = 0.3;
+    private static final String STALE = ".stale";
+
+    private static InputPlanner defaultPlanner;
+
+    private final File modelFile;
+    private final Map<InputPath, Double> scales =
+                            new EnumMap<InputPath, Double>(InputPath.class);
+    private final Map<InputPath, Integer> stale =
+                            new EnumMap<InputPath, Integer>(InputPath.class);
+    private int exploreAfter = 20;
+
+    /*
+     * modelFile may be null, the scales then last only as long
+     * as the planner.
+     */
+    public InputPlanner(File modelFile) {
+        this.modelFile = modelFile;
+        loadScales();
+    }
+
+    public static synchronized InputPlanner getDefault() {
+        if(defaultPlanner == null) {
+            defaultPlanner = new InputPlanner(new File(
+                System.getProperty("planner.model",
+                    new File(System.getProperty("java.io.tmpdir"),
+                        "example-data-io-planner.properties").getPath())))
+                .setExploreAfter(Integer.getInteger("planner.explore", 20));
+        }
+        return defaultPlanner;
+    }
+
+    /*
+     * Plans a path may go untaken while a candidate before it is
+     * taken once to check its scale, 0 to always take the
+     * cheapest.
+     */
+    public synchronized InputPlanner setExploreAfter(int exploreAfter) {
+        this.exploreAfter = Math.max(exploreAfter, 0);
+        return this;
+    }
+
+    /*
+     * plan
+     *
+     * rUser is used to look up the repository-managed copies, it
+     * may be null when they should not be considered.
+     */
+    public InputPlan plan(InputSource source, RUser rUser) throws IOException {
+
+        Map<InputPath, Long> bytes = new EnumMap<InputPath, Long>(InputPath.class);
+        long fileBytes = -1;
+
+        if(source.getFrame() != null) {
+            bytes.put(InputPath.ENCODED, estimateEncodedBytes(source.getFrame()));
+        }
+
+        if(source.getLocalFile() != null && source.getLocalFile().isFile()) {
+            fileBytes = source.getLocalFile().length();
+            bytes.put(InputPath.UPLOAD, fileBytes);
+        }
+
+        if(rUser != null && source.getRepoDataFile() != null) {
+            long size = repositorySize(rUser, source, source.getRepoDataFile());
+            if(size >= 0) {
+                bytes.put(InputPath.PRELOAD_DIRECTORY, size);
+                fileBytes = fileBytes < 0 ? size : fileBytes;
+            }
+        }
+
+        if(rUser != null && source.getRepoObjectFile() != null) {
+            long size = repositorySize(rUser, source, source.getRepoObjectFile());
+            if(size >= 0) {
+                bytes.put(InputPath.PRELOAD_WORKSPACE, size);
+            }
+        }
+
+        if(source.getUrl() != null) {
+            bytes.put(InputPath.EXTERNAL_URL, Math.max(fileBytes, 0));
+        }
+
+        if(bytes.isEmpty()) {
+            throw new IOException("No copy of input " + source.getName() +
+                                                        " is available.");
+        }
+
+        Map<InputPath, Long> millis = new EnumMap<InputPath, Long>(InputPath.class);
+        InputPath best = null;
+        for(Map.Entry<InputPath, Long> entry : bytes.entrySet()) {
+            InputPath path = entry.getKey();
+            long cost = Math.round(path.baseCost(entry.getValue()) * scaleOf(path));
+            millis.put(path, cost);
+            if(best == null || cost < millis.get(best)) {
+                best = path;
+            }
+        }
+
+        InputPath chosen = choose(best, millis.keySet());
+        InputPlan plan = new InputPlan(source, chosen, bytes, millis);
+        log.info("[   INPUT PLAN   ] input=" + source.getName() +
+            ", path=" + chosen + (chosen != best ? " (explore, cheapest=" +
+            best + ")" : "") + ", bytes=" + plan.getPredictedBytes() +
+            ", predicted=" + plan.getPredictedMillis() + "ms, candidates=" +
+            millis);
+        return plan;
+    }
+
+    /*
+     * apply
+     *
+     * Sets the input on options, uploading the data file first
+     * for UPLOAD.
+     */
+    public void apply(InputPlan plan, RProject rProject,
+                      ProjectExecutionOptions options) throws Exception {
+
+        InputSource source = plan.getSource();
+
+        switch(plan.getPath()) {
+            case ENCODED:
+                options.rinputs = Arrays.asList(
+                    source.getFrame().toDataFrame(source.getName()));
+                break;
+            case UPLOAD:
+                MappedDatFile dataFile = new MappedDatFile(source.getLocalFile());
+                try {
+                    DirectoryUploadOptions upOpts = new DirectoryUploadOptions();
+                    upOpts.filename = source.getFilename();
+                    upOpts.overwrite = true;
+                    rProject.uploadFile(dataFile.openStream(), upOpts);
+                } finally {
+                    IOUtils.closeQuietly(dataFile);
+                }
+                break;
+            case PRELOAD_DIRECTORY:
+                options.preloadDirectory = preloadOf(source,
+                                            source.getRepoDataFile());
+                break;
+            case PRELOAD_WORKSPACE:
+                options.preloadWorkspace = preloadOf(source,
+                                            source.getRepoObjectFile());
+                break;
+            default:
+                List<RData> rinputs = new ArrayList<RData>();
+                rinputs.add(RDataFactory.createString(source.getUrlName(),
+                                                        source.getUrl()));
+                options.rinputs = rinputs;
+        }
+    }
+
+    /*
+     * record
+     *
+     * Logs the predicted and actual cost of an executed plan and
+     * updates the scale of its path.
+     */
+    public synchronized void record(InputPlan plan, long actualMillis) {
+
+        InputPath path = plan.getPath();
+        long predicted = plan.getPredictedMillis();
+        double scale = scaleOf(path);
+        double base = Math.max(1.0, predicted / scale);
+        double updated = scale + LEARNING_RATE * (actualMillis / base - scale);
+        scales.put(path, updated);
+
+        log.info("[  PLAN METRICS  ] input=" + plan.getSource().getName() +
+            ", path=" + path + ", bytes=" + plan.getPredictedBytes() +
+            ", predicted=" + predicted + "ms, actual=" + actualMillis +
+            "ms, error=" + Math.round(100.0 * (predicted - actualMillis) /
+            Math.max(actualMillis, 1)) + "%, scale=" +
+            String.format("%.3f", updated));
+
+        saveScales();
+    }
+
+    /*
+     * best, or the candidate left untaken longest once that is
+     * exploreAfter plans. Counts the plans each candidate goes
+     * untaken.
+     */
+    private synchronized InputPath choose(InputPath best,
+                                          Set<InputPath> candidates) {
+        InputPath chosen = best;
+        if(exploreAfter > 0) {
+            for(InputPath path : candidates) {
+                if(staleOf(path) >= exploreAfter &&
+                        (chosen == best || staleOf(path) > staleOf(chosen))) {
+                    chosen = path;
+                }
+            }
+        }
+        for(InputPath path : candidates) {
+            stale.put(path, path == chosen ? 0 : staleOf(path) + 1);
+        }
+        return chosen;
+    }
+
+    private int staleOf(InputPath path) {
+        Integer count = stale.get(path);
+        return count == null ? 0 : count;
+    }
+
+    /*
+     * Encoded size of frame, extrapolated from the encoding of
+     * its first SAMPLE_ROWS rows.
+     */
+    static long estimateEncodedBytes(DatFrame frame) throws IOException {
+        int rows = frame.getRowCount();
+        int sample = Math.min(rows, SAMPLE_ROWS);
+        RDataJsonWriter writer = new RDataJsonWriter(new NullWriter());
+        writer.writeDataFrame(frame, 0, sample);
+        return sample == 0 ? writer.getCharCount() :
+                        writer.getCharCount() * rows / sample;
+    }
+
+    private synchronized double scaleOf(InputPath path) {
+        Double scale = scales.get(path);
+        return scale == null ? 1.0 : scale;
+    }
+
+    private static long repositorySize(RUser rUser, InputSource source,
+                                                    String filename) {
+        try {
+            RRepositoryFile file = rUser.fetchFile(filename,
+                source.getRepoAuthor(), source.getRepoDirectory(), null);
+            return file.about().size;
+        } catch(Exception ex) {
+            log.debug("Repository file unavailable, filename=" + filename +
+                                                            ", ex=" + ex);
+            return -1;
+        }
+    }
+
+    private static ProjectPreloadOptions preloadOf(InputSource source,
+                                                    String filename) {
+        ProjectPreloadOptions preload = new ProjectPreloadOptions();
+        preload.filename = filename;
+        preload.directory = source.getRepoDirectory();
+        preload.author = source.getRepoAuthor();
+        return preload;
+    }
+
+    private synchronized void loadScales() {
+        if(modelFile == null || !modelFile.isFile()) {
+            return;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(modelFile);
+            Properties model = new Properties();
+            model.load(in);
+            for(InputPath path : InputPath.values()) {
+                String value = model.getProperty(path.name());
+                if(value != null) {
+                    scales.put(path, Double.parseDouble(value));
+                }
+                value = model.getProperty(path.name() + STALE);
+                if(value != null) {
+                    stale.put(path, Integer.parseInt(value));
+                }
+            }
+        } catch(Exception ex) {
+            log.warn("Planner model unreadable, file=" + modelFile +
+                                                    ", ex=" + ex);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private synchronized void saveScales() {
+        if(modelFile == null) {
+            return;
+        }
+        Properties model = new Properties();
+        for(Map.Entry<InputPath, Double> entry : scales.entrySet()) {
+            model.setProperty(entry.getKey().name(),
+                                        entry.getValue().toString());
+        }
+        for(Map.Entry<InputPath, Integer> entry : stale.entrySet()) {
+            model.setProperty(entry.getKey().name() + STALE,
+                                        entry.getValue().toString());
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(modelFile);
+            model.store(out, null);
+        } catch(IOException ioex) {
+            log.warn("Planner model write failed, file=" + modelFile +
+                                                    ", ex=" + ioex);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+}
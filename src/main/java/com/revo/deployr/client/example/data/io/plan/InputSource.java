@@ -0,0 +1,123 @@
+/*
+ * InputSource.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.plan;
+
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.io.*;
+
+/*
+ * InputSource
+ *
+ * Describes where copies of one dataset can be found: a parsed
+ * frame, a local data file, repository-managed data and binary
+ * R object files, and an external URL. The InputPlanner only
+ * considers the InputPaths whose copy is set.
+ */
+public class InputSource {
+
+    private final String name;
+    private DatFrame frame;
+    private File localFile;
+    private String filename;
+    private String repoAuthor;
+    private String repoDirectory;
+    private String repoDataFile;
+    private String repoObjectFile;
+    private String urlName;
+    private String url;
+
+    /*
+     * name is the workspace object name of the dataset.
+     */
+    public InputSource(String name) {
+        this.name = name;
+    }
+
+    public InputSource setFrame(DatFrame frame) {
+        this.frame = frame;
+        return this;
+    }
+
+    /*
+     * The local data file, uploaded to the working directory
+     * as filename.
+     */
+    public InputSource setLocalFile(File localFile, String filename) {
+        this.localFile = localFile;
+        this.filename = filename;
+        return this;
+    }
+
+    /*
+     * Repository-managed copies, dataFile for preloadDirectory
+     * and objectFile for preloadWorkspace. Either may be null.
+     */
+    public InputSource setRepository(String author, String directory,
+                                     String dataFile, String objectFile) {
+        this.repoAuthor = author;
+        this.repoDirectory = directory;
+        this.repoDataFile = dataFile;
+        this.repoObjectFile = objectFile;
+        return this;
+    }
+
+    /*
+     * url is passed to the script as the string input urlName.
+     */
+    public InputSource setUrl(String urlName, String url) {
+        this.urlName = urlName;
+        this.url = url;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DatFrame getFrame() {
+        return frame;
+    }
+
+    public File getLocalFile() {
+        return localFile;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getRepoAuthor() {
+        return repoAuthor;
+    }
+
+    public String getRepoDirectory() {
+        return repoDirectory;
+    }
+
+    public String getRepoDataFile() {
+        return repoDataFile;
+    }
+
+    public String getRepoObjectFile() {
+        return repoObjectFile;
+    }
+
+    public String getUrlName() {
+        return urlName;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+}
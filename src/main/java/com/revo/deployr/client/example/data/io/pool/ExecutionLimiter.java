@@ -0,0 +1,284 @@
+/*
+ * ExecutionLimiter.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.params.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ExecutionLimiter
+ *
+ * Bounds the discrete executions, such as rClient.executeScript,
+ * that callers have on the server at once. Past what the grid
+ * can run concurrently extra executions only queue on the server
+ * and slow every other one down, so the limiter keeps at most
+ * window executions in flight and holds the rest in its own queue,
+ * where they cost nothing. Throughput then stays at what window
+ * executions achieve however many callers there are.
+ *
+ * Queued executions start in priority order, higher first, and in
+ * arrival order within a priority. Strict priority starves lower
+ * ones while higher ones keep coming, leave the default priority
+ * to callers that need no preference. An execution arriving to a
+ * queue of maxQueued is rejected at once, and a queued execution
+ * not started within maxWaitMillis gives up, both with
+ * ExecutionRejectedException, so an overloaded caller learns it
+ * fast rather than after a timeout on the server.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dexec.limit.window=n     executions in flight (default 4)
+ *   -Dexec.limit.queue=n      executions queued (default 64)
+ *   -Dexec.limit.wait.ms=n    longest queue wait (default 60000)
+ */
+public class ExecutionLimiter {
+
+    private static Logger log = Logger.getLogger(ExecutionLimiter.class);
+
+    public static final int NORM_PRIORITY = 0;
+
+    /*
+     * A discrete execution run within the limit.
+     */
+    public interface Execution<T> {
+        T execute() throws RClientException, RSecurityException,
+                           RDataException, RGridException;
+    }
+
+    private static ExecutionLimiter defaultLimiter;
+
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<Ticket>();
+    private int window = 4;
+    private int maxQueued = 64;
+    private long maxWaitMillis = 60000;
+    private int inFlight;
+    private long sequence;
+    private int peakQueued;
+    private long completed;
+    private long failed;
+    private long rejected;
+    private long timeouts;
+
+    public static synchronized ExecutionLimiter getDefault() {
+        if(defaultLimiter == null) {
+            defaultLimiter = new ExecutionLimiter()
+                .setWindow(Integer.getInteger("exec.limit.window", 4))
+                .setMaxQueued(Integer.getInteger("exec.limit.queue", 64))
+                .setMaxWaitMillis(Long.getLong("exec.limit.wait.ms", 60000));
+        }
+        return defaultLimiter;
+    }
+
+    /*
+     * Executions in flight at once. Raising it starts queued
+     * executions right away, lowering it lets the executions in
+     * flight finish.
+     */
+    public synchronized ExecutionLimiter setWindow(int window) {
+        this.window = Math.max(window, 1);
+        grant();
+        return this;
+    }
+
+    /*
+     * Executions queued at once, 0 to reject whatever finds the
+     * window full.
+     */
+    public synchronized ExecutionLimiter setMaxQueued(int maxQueued) {
+        this.maxQueued = Math.max(maxQueued, 0);
+        return this;
+    }
+
+    public synchronized ExecutionLimiter setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /*
+     * execute
+     *
+     * Runs execution at NORM_PRIORITY once the window has room.
+     */
+    public <T> T execute(Execution<T> execution)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+        return execute(NORM_PRIORITY, execution);
+    }
+
+    /*
+     * execute
+     *
+     * Runs execution once the window has room and no execution of
+     * the same or higher priority queued before it is waiting.
+     * Throws ExecutionRejectedException when the queue is full or
+     * the wait exceeds maxWaitMillis, and whatever execution
+     * throws.
+     */
+    public <T> T execute(int priority, Execution<T> execution)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+        acquire(priority);
+        boolean done = false;
+        try {
+            T result = execution.execute();
+            done = true;
+            return result;
+        } finally {
+            release(done);
+        }
+    }
+
+    /*
+     * executeScript
+     *
+     * rClient.executeScript run within the limit.
+     */
+    public RScriptExecution executeScript(final RClient rClient,
+                final String filename, final String directory,
+                final String author, final String version,
+                final AnonymousProjectExecutionOptions options)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+        return execute(new Execution<RScriptExecution>() {
+            public RScriptExecution execute()
+                    throws RClientException, RSecurityException,
+                           RDataException, RGridException {
+                return rClient.executeScript(filename, directory,
+                                            author, version, options);
+            }
+        });
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public synchronized long getRejected() {
+        return rejected + timeouts;
+    }
+
+    public synchronized String toString() {
+        return "ExecutionLimiter [ window=" + window + ", inFlight=" +
+            inFlight + ", queued=" + queue.size() + ", maxQueued=" +
+            maxQueued + ", peakQueued=" + peakQueued + ", completed=" +
+            completed + ", failed=" + failed + ", rejected=" + rejected +
+            ", timeouts=" + timeouts + " ]";
+    }
+
+    private synchronized void acquire(int priority)
+            throws ExecutionRejectedException {
+
+        if(inFlight < window && queue.isEmpty()) {
+            inFlight++;
+            return;
+        }
+        if(queue.size() >= maxQueued) {
+            rejected++;
+            throw new ExecutionRejectedException("Execution rejected, " +
+                "queue full, inFlight=" + inFlight + ", queued=" +
+                queue.size() + ", maxQueued=" + maxQueued);
+        }
+
+        Ticket ticket = new Ticket(priority, sequence++);
+        queue.add(ticket);
+        peakQueued = Math.max(peakQueued, queue.size());
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        try {
+            while(!ticket.granted) {
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) {
+                    timeouts++;
+                    throw new ExecutionRejectedException("Execution " +
+                        "rejected, not started within " + maxWaitMillis +
+                        "ms, inFlight=" + inFlight + ", queued=" +
+                        queue.size());
+                }
+                wait(remaining);
+            }
+        } catch(InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            if(ticket.granted) {
+                /*
+                 * Granted before the interrupt, hand the slot on.
+                 */
+                inFlight--;
+                grant();
+            }
+            throw new ExecutionRejectedException(
+                        "Interrupted waiting to execute.");
+        } finally {
+            if(!ticket.granted) {
+                queue.remove(ticket);
+            }
+        }
+        log.debug("Execution started after queueing, priority=" +
+            priority + ", waitMs=" + (System.currentTimeMillis() -
+                                                ticket.queued));
+    }
+
+    private synchronized void release(boolean done) {
+        inFlight--;
+        if(done) {
+            completed++;
+        } else {
+            failed++;
+        }
+        grant();
+    }
+
+    /*
+     * Hands the free window slots to the queue head.
+     */
+    private void grant() {
+        boolean granted = false;
+        while(inFlight < window && !queue.isEmpty()) {
+            queue.poll().granted = true;
+            inFlight++;
+            granted = true;
+        }
+        if(granted) {
+            notifyAll();
+        }
+    }
+
+    /*
+     * A queued execution, ordered by priority, then arrival.
+     */
+    private static class Ticket implements Comparable<Ticket> {
+
+        final int priority;
+        final long sequence;
+        final long queued = System.currentTimeMillis();
+        boolean granted;
+
+        Ticket(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Ticket other) {
+            if(priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 :
+                        (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * ExecutionRejectedException.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.*;
+
+/*
+ * ExecutionRejectedException
+ *
+ * Thrown by ExecutionLimiter for an execution it did not start,
+ * because its queue was full or the execution waited too long.
+ * Nothing reached the server, so the caller may retry later.
+ */
+public class ExecutionRejectedException extends RClientException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExecutionRejectedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * PooledClient.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.*;
+
+/*
+ * PooledClient
+ *
+ * One borrow of an authenticated RClient from an RClientPool.
+ * The borrower uses getRClient and getRUser as it would after its
+ * own login, and hands the client back with release, or with
+ * invalidate when a call failed in a way that leaves the
+ * connection in doubt. The borrower must not call logout or
+ * release on the RClient itself.
+ *
+ * Each borrow gets its own PooledClient, so a second release, or
+ * a release after invalidate, is ignored even when the client
+ * has since been lent to someone else.
+ */
+public class PooledClient {
+
+    private final RClientPool pool;
+    private final RClientPool.Entry entry;
+    private boolean returned;
+
+    PooledClient(RClientPool pool, RClientPool.Entry entry) {
+        this.pool = pool;
+        this.entry = entry;
+    }
+
+    public RClient getRClient() {
+        return entry.rClient;
+    }
+
+    public RUser getRUser() {
+        return entry.rUser;
+    }
+
+    /*
+     * Returns the client to the pool. Calls after the first are
+     * ignored, so release is safe in a finally block.
+     */
+    public void release() {
+        if(markReturned()) {
+            pool.giveBack(entry, true);
+        }
+    }
+
+    /*
+     * Returns the client to the pool to be logged out and
+     * discarded rather than reused.
+     */
+    public void invalidate() {
+        if(markReturned()) {
+            pool.giveBack(entry, false);
+        }
+    }
+
+    public String toString() {
+        return "PooledClient [ " + entry + ", returned=" + returned + " ]";
+    }
+
+    private synchronized boolean markReturned() {
+        if(returned) {
+            return false;
+        }
+        returned = true;
+        return true;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * PooledProject.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.*;
+
+/*
+ * PooledProject
+ *
+ * One borrow of a preloaded RProject from a ProjectPool. The
+ * borrower executes on getRProject as on a project it created,
+ * and hands it back with release, which has the pool restore the
+ * baseline, or with invalidate, which has the pool close it. The
+ * borrower must not close or recycle the RProject itself.
+ */
+public class PooledProject {
+
+    private final ProjectPool pool;
+    private final ProjectPool.Entry entry;
+    private final long borrowed = System.currentTimeMillis();
+    private boolean returned;
+
+    PooledProject(ProjectPool pool, ProjectPool.Entry entry) {
+        this.pool = pool;
+        this.entry = entry;
+    }
+
+    public RProject getRProject() {
+        return entry.rProject;
+    }
+
+    /*
+     * Returns the project to the pool. Calls after the first are
+     * ignored, so release is safe in a finally block.
+     */
+    public void release() {
+        if(markReturned()) {
+            pool.giveBack(entry, true, System.currentTimeMillis() - borrowed);
+        }
+    }
+
+    /*
+     * Returns the project to the pool to be closed rather than
+     * restored.
+     */
+    public void invalidate() {
+        if(markReturned()) {
+            pool.giveBack(entry, false, System.currentTimeMillis() - borrowed);
+        }
+    }
+
+    public String toString() {
+        return "PooledProject [ " + entry + ", returned=" + returned + " ]";
+    }
+
+    private synchronized boolean markReturned() {
+        if(returned) {
+            return false;
+        }
+        returned = true;
+        return true;
+    }
+
+}
@@ -0,0 +1,530 @@
+/*
+ * ProjectPool.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ProjectPool
+ *
+ * Keeps temporary RProjects of one RUser created and preloaded
+ * with a ProjectPreloadSpec, so a unit of work borrows a project
+ * ready to execute on instead of paying for R session start and
+ * the preload itself.
+ *
+ * Right after its preload each project copies the workspace
+ * objects into a hidden environment, .projectPoolBaseline, and
+ * notes the working directory files. A project released back to
+ * the pool is restored in the background by one executeCode call:
+ * every other workspace object is removed, the baseline objects
+ * are assigned back, files new since the baseline are deleted and
+ * the preload directory file is copied again. R copies objects on
+ * modification only, so the baseline copy costs no memory until
+ * a script changes a preloaded object.
+ *
+ * State outside the workspace and working directory, such as
+ * attached packages, options or the random seed, is not restored.
+ * When the restore fails, say because a script removed the hidden
+ * environment, the project is recycled and preloaded again, and
+ * closed when that fails too.
+ *
+ * The pool holds at most size projects, idle, borrowed and being
+ * restored together. prewarm creates them up front; a borrower
+ * finding none idle creates one when the pool is below size and
+ * otherwise waits up to maxWaitMillis. setSize resizes the pool
+ * while in use, see ProjectPoolAutoscaler: growing creates the
+ * new projects in the background, shrinking closes the longest
+ * idle projects and then projects as they come back.
+ *
+ * Optional system properties, read by the constructor:
+ *   -Dproject.pool.wait.ms=n     longest borrow wait (default 60000)
+ *   -Dproject.pool.workers=n     concurrent creations and restores (default 4)
+ *   -Dproject.pool.close.ms=n    longest wait for restores on close (default 30000)
+ */
+public class ProjectPool {
+
+    private static Logger log = Logger.getLogger(ProjectPool.class);
+
+    static final String BASELINE = ".projectPoolBaseline";
+
+    /*
+     * Most lease times held for takeLeaseTimes.
+     */
+    private static final int MAX_LEASE_SAMPLES = 1024;
+
+    /*
+     * Copies the preloaded workspace into the baseline environment
+     * and notes the working directory files on it.
+     */
+    private static final String SNAPSHOT_CODE =
+        "local({ b <- new.env(); " +
+        "for(n in ls(globalenv(), all.names = TRUE)) " +
+            "assign(n, get(n, envir = globalenv()), envir = b); " +
+        "attr(b, 'files') <- setdiff(list.files(all.files = TRUE), " +
+                                                "c('.', '..')); " +
+        "assign('" + BASELINE + "', b, envir = globalenv()) })";
+
+    /*
+     * Resets the workspace and working directory to the baseline,
+     * failing when the baseline environment is gone.
+     */
+    private static final String RESTORE_CODE =
+        "local({ b <- get('" + BASELINE + "', envir = globalenv(), " +
+                                                "inherits = FALSE); " +
+        "rm(list = setdiff(ls(globalenv(), all.names = TRUE), '" +
+                                    BASELINE + "'), envir = globalenv()); " +
+        "for(n in ls(b, all.names = TRUE)) " +
+            "assign(n, get(n, envir = b), envir = globalenv()); " +
+        "unlink(setdiff(setdiff(list.files(all.files = TRUE), " +
+            "c('.', '..')), attr(b, 'files')), recursive = TRUE) })";
+
+    private final RUser rUser;
+    private final ProjectPreloadSpec spec;
+    private final ExecutorService workers;
+    private final LinkedList<Entry> idle = new LinkedList<Entry>();
+    private final ArrayDeque<Long> leaseTimes = new ArrayDeque<Long>();
+    private int size;
+    private long maxWaitMillis;
+    private long closeWaitMillis;
+    private int total;
+    private int waiting;
+    private int peakWaiting;
+    private boolean closed;
+    private long created;
+    private long borrowed;
+    private long restored;
+    private long recycled;
+    private long discarded;
+    private long timeouts;
+
+    public ProjectPool(RUser rUser, ProjectPreloadSpec spec, int size) {
+        this.rUser = rUser;
+        this.spec = spec;
+        this.size = Math.max(size, 1);
+        this.maxWaitMillis = Long.getLong("project.pool.wait.ms", 60000);
+        this.closeWaitMillis = Long.getLong("project.pool.close.ms", 30000);
+        this.workers = Executors.newFixedThreadPool(
+            Math.max(Integer.getInteger("project.pool.workers", 4), 1),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "project-pool-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    public synchronized ProjectPool setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /*
+     * setSize
+     *
+     * Resizes the pool. Projects missing are created in the
+     * background, projects in excess are closed, idle ones now,
+     * longest idle first, and borrowed ones when released.
+     */
+    public void setSize(int size) {
+        List<Entry> surplus = new ArrayList<Entry>();
+        synchronized(this) {
+            this.size = Math.max(size, 1);
+            int excess = total - this.size;
+            while(excess-- > 0 && !idle.isEmpty()) {
+                surplus.add(idle.pollLast());
+                total--;
+                discarded++;
+            }
+        }
+        for(Entry entry : surplus) {
+            closeProject(entry);
+        }
+        fill();
+    }
+
+    /*
+     * Projects created and not yet closed, idle, borrowed and
+     * being restored.
+     */
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /*
+     * Borrowers waiting for a project now.
+     */
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /*
+     * Most borrowers waiting at once since the last call.
+     */
+    public synchronized int takePeakWaiting() {
+        int peak = peakWaiting;
+        peakWaiting = waiting;
+        return peak;
+    }
+
+    /*
+     * Lease times, in milliseconds, of the projects returned
+     * since the last call, the most recent MAX_LEASE_SAMPLES.
+     */
+    public synchronized List<Long> takeLeaseTimes() {
+        List<Long> times = new ArrayList<Long>(leaseTimes);
+        leaseTimes.clear();
+        return times;
+    }
+
+    /*
+     * Time the longest idle project has been idle, 0 when none
+     * is.
+     */
+    public synchronized long getLongestIdleMillis() {
+        return idle.isEmpty() ? 0 :
+            System.currentTimeMillis() - idle.peekLast().idleSince;
+    }
+
+    /*
+     * prewarm
+     *
+     * Creates and preloads projects until the pool holds size,
+     * several at a time, and waits for them. Returns the number
+     * of projects idle afterwards; a creation that fails is
+     * logged and left to a later borrow.
+     */
+    public int prewarm() throws InterruptedIOException {
+        List<Future<?>> futures = fill();
+        for(Future<?> future : futures) {
+            try {
+                future.get();
+            } catch(InterruptedException iex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                                "Project prewarm interrupted.");
+            } catch(ExecutionException eex) {
+                log.warn("Project prewarm failed, ex=" + eex.getCause());
+            }
+        }
+        synchronized(this) {
+            return idle.size();
+        }
+    }
+
+    /*
+     * borrow
+     *
+     * Returns a project holding the baseline, creating one when
+     * none is idle and the pool is below size. Throws
+     * RClientException when none becomes available within
+     * maxWaitMillis, and whatever creation throws.
+     */
+    public PooledProject borrow()
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+
+        Entry entry = null;
+        synchronized(this) {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            while(true) {
+                if(closed) {
+                    throw new RClientException("Project pool closed.");
+                }
+                entry = idle.pollFirst();
+                if(entry != null) {
+                    break;
+                }
+                if(total < size) {
+                    total++;
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0) {
+                    timeouts++;
+                    throw new RClientException("No pooled project " +
+                        "available within " + maxWaitMillis +
+                        "ms, size=" + size);
+                }
+                waiting++;
+                peakWaiting = Math.max(peakWaiting, waiting);
+                try {
+                    wait(remaining);
+                } catch(InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    throw new RClientException(
+                            "Interrupted waiting for pooled project.");
+                } finally {
+                    waiting--;
+                }
+            }
+        }
+
+        if(entry == null) {
+            entry = create();
+        }
+        synchronized(this) {
+            borrowed++;
+        }
+        return new PooledProject(this, entry);
+    }
+
+    /*
+     * Closes every idle project, then waits up to closeWaitMillis
+     * for the projects being created or restored, which the
+     * workers close as they finish. Projects still borrowed are
+     * closed when they come back.
+     */
+    public void close() {
+        List<Entry> all;
+        synchronized(this) {
+            closed = true;
+            all = new ArrayList<Entry>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for(Entry entry : all) {
+            discard(entry);
+        }
+        workers.shutdown();
+        try {
+            if(!workers.awaitTermination(closeWaitMillis,
+                                        TimeUnit.MILLISECONDS)) {
+                log.warn("Project pool closed with work pending, " + this);
+            }
+        } catch(InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized String toString() {
+        return "ProjectPool [ size=" + size + ", total=" + total +
+            ", idle=" + idle.size() + ", waiting=" + waiting +
+            ", created=" + created + ", borrowed=" + borrowed +
+            ", restored=" + restored + ", recycled=" + recycled +
+            ", discarded=" + discarded + ", timeouts=" + timeouts + " ]";
+    }
+
+    /*
+     * Takes entry back from its borrower, see PooledProject, and
+     * restores or closes it on a worker thread.
+     */
+    void giveBack(final Entry entry, final boolean reusable,
+                  long leaseMillis) {
+        log.debug("Pooled project returned, " + entry + ", leaseMs=" +
+                                                        leaseMillis);
+        synchronized(this) {
+            if(leaseTimes.size() == MAX_LEASE_SAMPLES) {
+                leaseTimes.pollFirst();
+            }
+            leaseTimes.addLast(leaseMillis);
+        }
+        try {
+            workers.submit(new Runnable() {
+                public void run() {
+                    if(shed()) {
+                        closeProject(entry);
+                    } else
+                    if(reusable && restore(entry)) {
+                        if(!keep(entry)) {
+                            closeProject(entry);
+                        }
+                    } else {
+                        discard(entry);
+                    }
+                }
+            });
+        } catch(RejectedExecutionException rex) {
+            discard(entry);
+        }
+    }
+
+    /*
+     * Starts creating the projects missing from size on worker
+     * threads.
+     */
+    private List<Future<?>> fill() {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        synchronized(this) {
+            while(!closed && total < size) {
+                total++;
+                futures.add(workers.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            Entry entry = create();
+                            if(!keep(entry)) {
+                                closeProject(entry);
+                            }
+                        } catch(Exception ex) {
+                            log.warn("Project creation failed, ex=" + ex);
+                        }
+                    }
+                }));
+            }
+        }
+        return futures;
+    }
+
+    /*
+     * Makes entry idle, unless the pool was closed or shrunk
+     * below its total meanwhile. False when the entry is counted
+     * out instead, for the caller to close its project.
+     */
+    private synchronized boolean keep(Entry entry) {
+        if(shed()) {
+            return false;
+        }
+        entry.idleSince = System.currentTimeMillis();
+        idle.addFirst(entry);
+        notifyAll();
+        return true;
+    }
+
+    /*
+     * Counts one project out when the pool is closed or above
+     * size, for the caller to close it.
+     */
+    private synchronized boolean shed() {
+        if(!closed && total <= size) {
+            return false;
+        }
+        total--;
+        discarded++;
+        notifyAll();
+        return true;
+    }
+
+    /*
+     * Creates and preloads a project the pool total already
+     * counts.
+     */
+    private Entry create()
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+        boolean done = false;
+        RProject rProject = null;
+        try {
+            long start = System.currentTimeMillis();
+            rProject = rUser.createProject();
+            load(rProject);
+            synchronized(this) {
+                created++;
+            }
+            Entry entry = new Entry(rProject);
+            log.debug("Pooled project created, " + entry + ", ms=" +
+                                    (System.currentTimeMillis() - start));
+            done = true;
+            return entry;
+        } finally {
+            if(!done) {
+                if(rProject != null) {
+                    try {
+                        rProject.close();
+                    } catch(Exception ex) {
+                    }
+                }
+                synchronized(this) {
+                    total--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void load(RProject rProject)
+            throws RClientException, RSecurityException,
+                   RDataException, RGridException {
+        rProject.executeCode(SNAPSHOT_CODE, spec.loadOptions());
+    }
+
+    /*
+     * Restores entry to the baseline, recycling and preloading it
+     * again when that fails. False when the project is unusable.
+     */
+    private boolean restore(Entry entry) {
+        try {
+            entry.rProject.executeCode(RESTORE_CODE, spec.restoreOptions());
+            synchronized(this) {
+                restored++;
+            }
+            return true;
+        } catch(Exception ex) {
+            log.debug("Pooled project restore failed, recycling, " + entry +
+                                                            ", ex=" + ex);
+        }
+        try {
+            entry.rProject = entry.rProject.recycle();
+            load(entry.rProject);
+            synchronized(this) {
+                recycled++;
+            }
+            return true;
+        } catch(Exception ex) {
+            log.warn("Pooled project recycle failed, closing, " + entry +
+                                                            ", ex=" + ex);
+            return false;
+        }
+    }
+
+    private void discard(Entry entry) {
+        closeProject(entry);
+        synchronized(this) {
+            total--;
+            discarded++;
+            notifyAll();
+        }
+    }
+
+    private void closeProject(Entry entry) {
+        try {
+            entry.rProject.close();
+        } catch(Exception ex) {
+            log.debug("Pooled project close failed, " + entry +
+                                                        ", ex=" + ex);
+        }
+    }
+
+    /*
+     * A pooled project. rProject changes when it is recycled,
+     * while no borrower holds the entry.
+     */
+    static class Entry {
+
+        volatile RProject rProject;
+        final long created = System.currentTimeMillis();
+        long idleSince;
+
+        Entry(RProject rProject) {
+            this.rProject = rProject;
+        }
+
+        public String toString() {
+            return "project=" + rProject.about().id + ", ageMs=" +
+                                (System.currentTimeMillis() - created);
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * ProjectPoolAutoscaler.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ProjectPoolAutoscaler
+ *
+ * Resizes a ProjectPool between minSize and maxSize with the load
+ * on it, so a burst does not queue behind too few R sessions and a
+ * quiet pool does not hold grid slots it has no use for.
+ *
+ * Every periodMillis the autoscaler looks at the most borrowers
+ * that waited at once and the p95 lease time since the previous
+ * tick. When either crosses its threshold for growTicks ticks in a
+ * row, the pool grows by the peak queue, at least growStep. The
+ * pool shrinks by one project at a time, and only when nobody
+ * waited, the p95 lease time is under half its threshold, no
+ * resize happened for coolDownMillis and a project has been idle
+ * that long. The gap between the two conditions keeps the pool
+ * from flapping.
+ *
+ * maxSize should not exceed the projects the grid lets the user
+ * hold; the last decision is kept as ScalingMetrics.
+ *
+ * Optional system properties, used by the constructor:
+ *   -Dautoscale.min=n           smallest pool size (default 1)
+ *   -Dautoscale.max=n           largest pool size (default 8)
+ *   -Dautoscale.queue=n         waiting borrowers to grow on (default 1)
+ *   -Dautoscale.lease.ms=n      p95 lease time to grow on (default 0, off)
+ *   -Dautoscale.cooldown.ms=n   quiet time before a shrink (default 60000)
+ *   -Dautoscale.period.ms=n     time between ticks (default 5000)
+ */
+public class ProjectPoolAutoscaler {
+
+    private static Logger log = Logger.getLogger(ProjectPoolAutoscaler.class);
+
+    private final ProjectPool pool;
+    private int minSize;
+    private int maxSize;
+    private int growQueueDepth;
+    private long growLeaseMillis;
+    private int growTicks = 2;
+    private int growStep = 1;
+    private long coolDownMillis;
+    private long periodMillis;
+
+    private ScheduledExecutorService scheduler;
+    private int hotTicks;
+    private long lastResize = System.currentTimeMillis();
+    private long grows;
+    private long shrinks;
+    private ScalingMetrics metrics;
+
+    public ProjectPoolAutoscaler(ProjectPool pool) {
+        this.pool = pool;
+        setMinSize(Integer.getInteger("autoscale.min", 1));
+        setMaxSize(Integer.getInteger("autoscale.max", 8));
+        setGrowQueueDepth(Integer.getInteger("autoscale.queue", 1));
+        setGrowLeaseMillis(Long.getLong("autoscale.lease.ms", 0));
+        setCoolDownMillis(Long.getLong("autoscale.cooldown.ms", 60000));
+        setPeriodMillis(Long.getLong("autoscale.period.ms", 5000));
+    }
+
+    public synchronized ProjectPoolAutoscaler setMinSize(int minSize) {
+        this.minSize = Math.max(minSize, 1);
+        this.maxSize = Math.max(maxSize, this.minSize);
+        return this;
+    }
+
+    public synchronized ProjectPoolAutoscaler setMaxSize(int maxSize) {
+        this.maxSize = Math.max(maxSize, minSize);
+        return this;
+    }
+
+    /*
+     * Borrowers waiting at once that count as load to grow on.
+     */
+    public synchronized ProjectPoolAutoscaler setGrowQueueDepth(
+                                                int growQueueDepth) {
+        this.growQueueDepth = Math.max(growQueueDepth, 1);
+        return this;
+    }
+
+    /*
+     * p95 lease time that counts as load to grow on, 0 to grow on
+     * the queue only. Lease time also rises with the cost of the
+     * scripts run, so set it above the normal p95.
+     */
+    public synchronized ProjectPoolAutoscaler setGrowLeaseMillis(
+                                                long growLeaseMillis) {
+        this.growLeaseMillis = Math.max(growLeaseMillis, 0);
+        return this;
+    }
+
+    /*
+     * Consecutive ticks under load before the pool grows.
+     */
+    public synchronized ProjectPoolAutoscaler setGrowTicks(int growTicks) {
+        this.growTicks = Math.max(growTicks, 1);
+        return this;
+    }
+
+    public synchronized ProjectPoolAutoscaler setGrowStep(int growStep) {
+        this.growStep = Math.max(growStep, 1);
+        return this;
+    }
+
+    public synchronized ProjectPoolAutoscaler setCoolDownMillis(
+                                                long coolDownMillis) {
+        this.coolDownMillis = Math.max(coolDownMillis, 0);
+        return this;
+    }
+
+    public synchronized ProjectPoolAutoscaler setPeriodMillis(
+                                                long periodMillis) {
+        this.periodMillis = Math.max(periodMillis, 1);
+        return this;
+    }
+
+    /*
+     * The last decision, null before the first tick.
+     */
+    public synchronized ScalingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     * Starts ticking every periodMillis, the first tick bringing
+     * the pool within minSize and maxSize.
+     */
+    public synchronized void start() {
+        if(scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "project-pool-autoscaler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    tick();
+                } catch(Exception ex) {
+                    log.warn("Autoscaler tick failed, ex=" + ex);
+                }
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Stops ticking, the pool keeps its current size.
+     */
+    public synchronized void stop() {
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * tick
+     *
+     * Samples the pool, decides and applies the new size.
+     */
+    synchronized ScalingMetrics tick() {
+
+        int size = pool.getSize();
+        int waiting = pool.getWaiting();
+        int peakWaiting = pool.takePeakWaiting();
+        List<Long> leaseTimes = pool.takeLeaseTimes();
+        long p95 = percentile(leaseTimes, 95);
+        long now = System.currentTimeMillis();
+
+        boolean hot = peakWaiting >= growQueueDepth ||
+                        (growLeaseMillis > 0 && p95 >= growLeaseMillis);
+        hotTicks = hot ? hotTicks + 1 : 0;
+
+        ScalingMetrics.Decision decision = ScalingMetrics.Decision.HOLD;
+        int newSize = size;
+        String reason;
+
+        if(size < minSize) {
+            newSize = minSize;
+            reason = "below min";
+        } else
+        if(size > maxSize) {
+            newSize = maxSize;
+            reason = "above max";
+        } else
+        if(hot) {
+            if(size >= maxSize) {
+                reason = "at max under load";
+            } else
+            if(hotTicks < growTicks) {
+                reason = "under load " + hotTicks + "/" + growTicks;
+            } else {
+                newSize = Math.min(size + Math.max(growStep, peakWaiting),
+                                                                maxSize);
+                reason = peakWaiting >= growQueueDepth ?
+                    "queue " + peakWaiting : "p95 lease " + p95 + "ms";
+            }
+        } else
+        if(size <= minSize) {
+            reason = "at min";
+        } else
+        if(peakWaiting > 0 ||
+                (growLeaseMillis > 0 && p95 >= growLeaseMillis / 2)) {
+            reason = "warm";
+        } else
+        if(now - lastResize < coolDownMillis) {
+            reason = "cooling down";
+        } else
+        if(pool.getLongestIdleMillis() < coolDownMillis) {
+            reason = "no idle project";
+        } else {
+            newSize = size - 1;
+            reason = "idle";
+        }
+
+        if(newSize > size) {
+            decision = ScalingMetrics.Decision.GROW;
+            grows++;
+        } else
+        if(newSize < size) {
+            decision = ScalingMetrics.Decision.SHRINK;
+            shrinks++;
+        }
+        if(decision != ScalingMetrics.Decision.HOLD) {
+            pool.setSize(newSize);
+            lastResize = now;
+            hotTicks = 0;
+        }
+
+        metrics = new ScalingMetrics(size, pool.getTotal(),
+            pool.getIdleCount(), waiting, peakWaiting, leaseTimes.size(),
+            p95, decision, newSize, reason, grows, shrinks);
+
+        if(decision == ScalingMetrics.Decision.HOLD) {
+            log.debug("[  AUTOSCALER    ] " + metrics);
+        } else {
+            log.info("[  AUTOSCALER    ] " + metrics);
+        }
+        return metrics;
+    }
+
+    public synchronized String toString() {
+        return "ProjectPoolAutoscaler [ min=" + minSize + ", max=" + maxSize +
+            ", queue=" + growQueueDepth + ", leaseMs=" + growLeaseMillis +
+            ", coolDownMs=" + coolDownMillis + ", grows=" + grows +
+            ", shrinks=" + shrinks + " ]";
+    }
+
+    /*
+     * The nearest-rank percentile of times, -1 when empty.
+     */
+    static long percentile(List<Long> times, int percent) {
+        if(times.isEmpty()) {
+            return -1;
+        }
+        List<Long> sorted = new ArrayList<Long>(times);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * ProjectPreloadSpec.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.data.*;
+import com.revo.deployr.client.params.*;
+import java.util.*;
+
+/*
+ * ProjectPreloadSpec
+ *
+ * The baseline every project of a ProjectPool starts from: an
+ * optional repository workspace file loaded into the workspace,
+ * an optional repository file copied to the working directory,
+ * and optional rinputs, the same inputs ProjectCreationOptions
+ * takes to "pre-heat" a project.
+ */
+public class ProjectPreloadSpec {
+
+    private ProjectPreloadOptions workspace;
+    private ProjectPreloadOptions directory;
+    private List<RData> inputs = Collections.emptyList();
+
+    public ProjectPreloadSpec setWorkspace(ProjectPreloadOptions workspace) {
+        this.workspace = workspace;
+        return this;
+    }
+
+    public ProjectPreloadSpec setDirectory(ProjectPreloadOptions directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    public ProjectPreloadSpec setInputs(List<RData> inputs) {
+        this.inputs = new ArrayList<RData>(inputs);
+        return this;
+    }
+
+    /*
+     * Options of the execution that loads the baseline into a new
+     * or recycled project.
+     */
+    ProjectExecutionOptions loadOptions() {
+        ProjectExecutionOptions options = new ProjectExecutionOptions();
+        options.preloadWorkspace = workspace;
+        options.preloadDirectory = directory;
+        options.rinputs = inputs.isEmpty() ? null : inputs;
+        return options;
+    }
+
+    /*
+     * Options of the execution that restores a returned project.
+     * Workspace objects are restored from the in-session copy,
+     * only the directory file is copied again, in case a script
+     * rewrote it.
+     */
+    ProjectExecutionOptions restoreOptions() {
+        ProjectExecutionOptions options = new ProjectExecutionOptions();
+        options.preloadDirectory = directory;
+        return options;
+    }
+
+    public String toString() {
+        return "ProjectPreloadSpec [ workspace=" + nameOf(workspace) +
+            ", directory=" + nameOf(directory) + ", inputs=" +
+            inputs.size() + " ]";
+    }
+
+    private static String nameOf(ProjectPreloadOptions preload) {
+        return preload == null ? null : preload.author + "/" +
+                                preload.directory + "/" + preload.filename;
+    }
+
+}
@@ -0,0 +1,568 @@
+/*
+ * RClientPool.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.auth.RAuthentication;
+import com.revo.deployr.client.auth.basic.RBasicAuthentication;
+import com.revo.deployr.client.factory.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.security.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * RClientPool
+ *
+ * Keeps authenticated RClient connections for reuse, so a unit of
+ * work borrows a client already connected and logged in instead
+ * of paying RClientFactory.createClient and rClient.login itself.
+ *
+ * Clients are pooled per endpoint and credentials. Each pool
+ * holds at most maxSize clients, idle and borrowed together; a
+ * borrower finding none idle and the pool full waits up to
+ * maxWaitMillis. The most recently returned client is handed out
+ * first, so surplus clients stay idle and age out: a background
+ * evictor logs out clients idle longer than idleMillis, down to
+ * minIdle, and logs in new ones up to minIdle.
+ *
+ * A client idle longer than validateAfterMillis is checked on
+ * borrow with the Validator, by default a listProjects call. When
+ * the check fails with RSecurityException, taken to mean the
+ * server session expired, the client logs in again; when that
+ * fails too, or the check fails otherwise, the client is
+ * discarded and the borrow carries on with the next one.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dclient.pool.min=n         idle clients kept per pool (default 0)
+ *   -Dclient.pool.max=n         clients per pool (default 8)
+ *   -Dclient.pool.idle.ms=n     idle time before eviction (default 300000)
+ *   -Dclient.pool.validate.ms=n idle time before validation (default 30000)
+ *   -Dclient.pool.wait.ms=n     longest borrow wait (default 30000)
+ */
+public class RClientPool {
+
+    private static Logger log = Logger.getLogger(RClientPool.class);
+
+    /*
+     * Checks that a pooled client still holds a live session.
+     */
+    public interface Validator {
+        void validate(RClient rClient, RUser rUser) throws Exception;
+    }
+
+    public static final Validator LIST_PROJECTS = new Validator() {
+        public void validate(RClient rClient, RUser rUser) throws Exception {
+            rUser.listProjects();
+        }
+    };
+
+    private static RClientPool defaultPool;
+
+    private final Map<Key, Pool> pools = new HashMap<Key, Pool>();
+    private int minIdle;
+    private int maxSize = 8;
+    private long idleMillis = 300000;
+    private long validateAfterMillis = 30000;
+    private long maxWaitMillis = 30000;
+    private Validator validator = LIST_PROJECTS;
+    private ScheduledExecutorService evictor;
+    private boolean closed;
+
+    public static synchronized RClientPool getDefault() {
+        if(defaultPool == null) {
+            defaultPool = new RClientPool()
+                .setMinIdle(Integer.getInteger("client.pool.min", 0))
+                .setMaxSize(Integer.getInteger("client.pool.max", 8))
+                .setIdleMillis(Long.getLong("client.pool.idle.ms", 300000))
+                .setValidateAfterMillis(
+                        Long.getLong("client.pool.validate.ms", 30000))
+                .setMaxWaitMillis(Long.getLong("client.pool.wait.ms", 30000));
+        }
+        return defaultPool;
+    }
+
+    public synchronized RClientPool setMinIdle(int minIdle) {
+        this.minIdle = Math.max(minIdle, 0);
+        return this;
+    }
+
+    public synchronized RClientPool setMaxSize(int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+        return this;
+    }
+
+    public synchronized RClientPool setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+        return this;
+    }
+
+    /*
+     * Idle time after which a client is validated on borrow, 0
+     * to validate on every borrow.
+     */
+    public synchronized RClientPool setValidateAfterMillis(
+                                            long validateAfterMillis) {
+        this.validateAfterMillis = validateAfterMillis;
+        return this;
+    }
+
+    public synchronized RClientPool setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    public synchronized RClientPool setValidator(Validator validator) {
+        this.validator = validator;
+        return this;
+    }
+
+    /*
+     * borrow
+     *
+     * Returns an authenticated client for endpoint and the
+     * credentials, reusing an idle one when there is one. Throws
+     * RClientException when none becomes available within
+     * maxWaitMillis, and whatever connect or login throws when a
+     * new client is made.
+     */
+    public PooledClient borrow(String endpoint, String username,
+                               String password)
+            throws RClientException, RSecurityException {
+
+        Pool pool = poolOf(endpoint, username, password);
+        long deadline = System.currentTimeMillis() + maxWaitMillis();
+
+        while(true) {
+            Entry entry = null;
+            synchronized(pool) {
+                while(true) {
+                    if(isClosed()) {
+                        throw new RClientException("Client pool closed.");
+                    }
+                    entry = pool.idle.pollFirst();
+                    if(entry != null || pool.size < maxSize()) {
+                        break;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if(remaining <= 0) {
+                        pool.timeouts++;
+                        throw new RClientException("No pooled client " +
+                            "available within " + maxWaitMillis() +
+                            "ms, endpoint=" + endpoint + ", user=" +
+                            username + ", maxSize=" + maxSize());
+                    }
+                    try {
+                        pool.wait(remaining);
+                    } catch(InterruptedException iex) {
+                        Thread.currentThread().interrupt();
+                        throw new RClientException(
+                                "Interrupted waiting for pooled client.");
+                    }
+                }
+                if(entry == null) {
+                    pool.size++;
+                }
+            }
+
+            if(entry == null) {
+                entry = connect(pool);
+            } else
+            if(entry.idleMillis() >= validateAfterMillis() &&
+                                            !validate(pool, entry)) {
+                discard(pool, entry);
+                continue;
+            }
+
+            synchronized(pool) {
+                pool.borrowed++;
+            }
+            startEvictor();
+            return new PooledClient(this, entry);
+        }
+    }
+
+    /*
+     * Logs out and releases every idle client. Clients borrowed
+     * are discarded when they are returned.
+     */
+    public void close() {
+        List<Pool> all;
+        synchronized(this) {
+            closed = true;
+            if(evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+            all = new ArrayList<Pool>(pools.values());
+        }
+        for(Pool pool : all) {
+            List<Entry> idle;
+            synchronized(pool) {
+                idle = new ArrayList<Entry>(pool.idle);
+                pool.idle.clear();
+                pool.notifyAll();
+            }
+            for(Entry entry : idle) {
+                discard(pool, entry);
+            }
+        }
+    }
+
+    public String toString() {
+        List<Pool> all;
+        synchronized(this) {
+            all = new ArrayList<Pool>(pools.values());
+        }
+        int size = 0, idle = 0;
+        long created = 0, borrowed = 0, relogins = 0,
+             discarded = 0, timeouts = 0;
+        for(Pool pool : all) {
+            synchronized(pool) {
+                size += pool.size;
+                idle += pool.idle.size();
+                created += pool.created;
+                borrowed += pool.borrowed;
+                relogins += pool.relogins;
+                discarded += pool.discarded;
+                timeouts += pool.timeouts;
+            }
+        }
+        return "RClientPool [ pools=" + all.size() + ", size=" + size +
+            ", idle=" + idle + ", created=" + created + ", borrowed=" +
+            borrowed + ", relogins=" + relogins + ", discarded=" +
+            discarded + ", timeouts=" + timeouts + " ]";
+    }
+
+    /*
+     * Takes entry back from its borrower, see PooledClient.
+     */
+    void giveBack(Entry entry, boolean reusable) {
+        Pool pool;
+        synchronized(this) {
+            pool = pools.get(entry.key);
+        }
+        synchronized(pool) {
+            entry.lastUsed = System.currentTimeMillis();
+            if(reusable && !isClosed()) {
+                pool.idle.addFirst(entry);
+                pool.notifyAll();
+                return;
+            }
+        }
+        discard(pool, entry);
+    }
+
+    private synchronized Pool poolOf(String endpoint, String username,
+                                     String password) {
+        Key key = new Key(endpoint, username, password);
+        Pool pool = pools.get(key);
+        if(pool == null) {
+            pool = new Pool(key, new RBasicAuthentication(username, password));
+            pools.put(key, pool);
+        }
+        return pool;
+    }
+
+    /*
+     * Makes a new client for pool, whose size already counts it.
+     */
+    private Entry connect(Pool pool)
+            throws RClientException, RSecurityException {
+        RClient rClient = null;
+        boolean done = false;
+        try {
+            long start = System.currentTimeMillis();
+            rClient = RClientFactory.createClient(pool.key.endpoint);
+            RUser rUser = rClient.login(pool.auth);
+            Entry entry = new Entry(pool.key, rClient, rUser);
+            synchronized(pool) {
+                pool.created++;
+            }
+            log.debug("Pooled client created, endpoint=" + pool.key.endpoint +
+                ", user=" + pool.key.username + ", ms=" +
+                (System.currentTimeMillis() - start));
+            done = true;
+            return entry;
+        } finally {
+            if(!done) {
+                if(rClient != null) {
+                    rClient.release();
+                }
+                synchronized(pool) {
+                    pool.size--;
+                    pool.notifyAll();
+                }
+            }
+        }
+    }
+
+    /*
+     * Validates entry, logging in again on RSecurityException.
+     */
+    private boolean validate(Pool pool, Entry entry) {
+        try {
+            validator().validate(entry.rClient, entry.rUser);
+            return true;
+        } catch(RSecurityException sex) {
+            try {
+                entry.rUser = entry.rClient.login(pool.auth);
+                synchronized(pool) {
+                    pool.relogins++;
+                }
+                log.debug("Pooled client session renewed, " + entry);
+                return true;
+            } catch(Exception ex) {
+                log.debug("Pooled client login failed, " + entry +
+                                                        ", ex=" + ex);
+                return false;
+            }
+        } catch(Exception ex) {
+            log.debug("Pooled client failed validation, " + entry +
+                                                        ", ex=" + ex);
+            return false;
+        }
+    }
+
+    /*
+     * Logs out and releases entry, which is neither idle nor
+     * borrowed any longer.
+     */
+    private void discard(Pool pool, Entry entry) {
+        try {
+            entry.rClient.logout(entry.rUser);
+        } catch(Exception ex) {
+            log.debug("Pooled client logout failed, " + entry +
+                                                        ", ex=" + ex);
+        }
+        try {
+            entry.rClient.release();
+        } catch(Exception ex) {
+        }
+        synchronized(pool) {
+            pool.size--;
+            pool.discarded++;
+            pool.notifyAll();
+        }
+    }
+
+    /*
+     * Starts the evictor on first use.
+     */
+    private synchronized void startEvictor() {
+        if(evictor != null || closed) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "client-pool-evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        long period = Math.max(idleMillis / 2, 1000);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evict();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * evict
+     *
+     * Discards the clients idle longer than idleMillis, oldest
+     * first and down to minIdle, then tops each pool up to
+     * minIdle idle clients within maxSize.
+     */
+    void evict() {
+        List<Pool> all;
+        synchronized(this) {
+            all = new ArrayList<Pool>(pools.values());
+        }
+        int minIdle = minIdle();
+        for(Pool pool : all) {
+            List<Entry> expired = new ArrayList<Entry>();
+            int missing;
+            synchronized(pool) {
+                while(pool.idle.size() > minIdle &&
+                        pool.idle.peekLast().idleMillis() >= idleMillis()) {
+                    expired.add(pool.idle.pollLast());
+                }
+                missing = Math.min(minIdle - pool.idle.size(),
+                                   maxSize() - pool.size);
+                if(missing > 0) {
+                    pool.size += missing;
+                }
+            }
+            for(Entry entry : expired) {
+                discard(pool, entry);
+            }
+            for(int i = 0; i < missing; i++) {
+                if(isClosed()) {
+                    synchronized(pool) {
+                        pool.size -= missing - i;
+                        pool.notifyAll();
+                    }
+                    break;
+                }
+                try {
+                    Entry entry = connect(pool);
+                    synchronized(pool) {
+                        pool.idle.addLast(entry);
+                        pool.notifyAll();
+                    }
+                } catch(Exception ex) {
+                    log.warn("Pooled client top up failed, endpoint=" +
+                        pool.key.endpoint + ", ex=" + ex);
+                    synchronized(pool) {
+                        pool.size -= missing - i - 1;
+                        pool.notifyAll();
+                    }
+                    break;
+                }
+            }
+            if(!expired.isEmpty()) {
+                log.debug("Evicted idle pooled clients, endpoint=" +
+                    pool.key.endpoint + ", user=" + pool.key.username +
+                    ", evicted=" + expired.size());
+            }
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized int minIdle() {
+        return minIdle;
+    }
+
+    private synchronized int maxSize() {
+        return maxSize;
+    }
+
+    private synchronized long idleMillis() {
+        return idleMillis;
+    }
+
+    private synchronized long validateAfterMillis() {
+        return validateAfterMillis;
+    }
+
+    private synchronized long maxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    private synchronized Validator validator() {
+        return validator;
+    }
+
+    /*
+     * Endpoint and credentials a pool is for. The password is
+     * held as a digest only.
+     */
+    static class Key {
+
+        final String endpoint;
+        final String username;
+        final String secret;
+
+        Key(String endpoint, String username, String password) {
+            this.endpoint = endpoint;
+            this.username = username;
+            this.secret = digest(endpoint + '\0' + username + '\0' + password);
+        }
+
+        public boolean equals(Object other) {
+            if(!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return String.valueOf(endpoint).equals(String.valueOf(key.endpoint)) &&
+                   String.valueOf(username).equals(String.valueOf(key.username)) &&
+                   secret.equals(key.secret);
+        }
+
+        public int hashCode() {
+            return secret.hashCode();
+        }
+
+        private static String digest(String value) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                StringBuilder hex = new StringBuilder(64);
+                for(byte b : md.digest(value.getBytes("UTF-8"))) {
+                    hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                    hex.append(Character.forDigit(b & 0xF, 16));
+                }
+                return hex.toString();
+            } catch(Exception ex) {
+                throw new IllegalStateException("SHA-256 unavailable.", ex);
+            }
+        }
+    }
+
+    /*
+     * A pooled connection. rUser changes on a renewed login and
+     * lastUsed on return, both while no borrower holds the entry.
+     */
+    static class Entry {
+
+        final Key key;
+        final RClient rClient;
+        final long created = System.currentTimeMillis();
+        volatile RUser rUser;
+        volatile long lastUsed = created;
+
+        Entry(Key key, RClient rClient, RUser rUser) {
+            this.key = key;
+            this.rClient = rClient;
+            this.rUser = rUser;
+        }
+
+        long idleMillis() {
+            return System.currentTimeMillis() - lastUsed;
+        }
+
+        public String toString() {
+            return "endpoint=" + key.endpoint + ", user=" + key.username +
+                ", ageMs=" + (System.currentTimeMillis() - created);
+        }
+    }
+
+    /*
+     * The clients of one Key. size counts idle, borrowed and
+     * being made; all fields are guarded by the Pool itself.
+     */
+    private static class Pool {
+
+        final Key key;
+        final RAuthentication auth;
+        final LinkedList<Entry> idle = new LinkedList<Entry>();
+        int size;
+        long created;
+        long borrowed;
+        long relogins;
+        long discarded;
+        long timeouts;
+
+        Pool(Key key, RAuthentication auth) {
+            this.key = key;
+            this.auth = auth;
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * ScalingMetrics.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.pool;
+
+/*
+ * ScalingMetrics
+ *
+ * What a ProjectPoolAutoscaler saw on one tick and what it decided,
+ * for tuning its bounds and thresholds against the grid slots the
+ * user may hold. Lease figures cover the projects returned since
+ * the previous tick, -1 when none was.
+ */
+public class ScalingMetrics {
+
+    public enum Decision { GROW, SHRINK, HOLD }
+
+    private final long time = System.currentTimeMillis();
+    private final int size;
+    private final int total;
+    private final int idle;
+    private final int waiting;
+    private final int peakWaiting;
+    private final int leases;
+    private final long p95LeaseMillis;
+    private final Decision decision;
+    private final int newSize;
+    private final String reason;
+    private final long grows;
+    private final long shrinks;
+
+    ScalingMetrics(int size, int total, int idle, int waiting,
+                   int peakWaiting, int leases, long p95LeaseMillis,
+                   Decision decision, int newSize, String reason,
+                   long grows, long shrinks) {
+        this.size = size;
+        this.total = total;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.peakWaiting = peakWaiting;
+        this.leases = leases;
+        this.p95LeaseMillis = p95LeaseMillis;
+        this.decision = decision;
+        this.newSize = newSize;
+        this.reason = reason;
+        this.grows = grows;
+        this.shrinks = shrinks;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /*
+     * Pool size before the decision.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /*
+     * Most borrowers waiting at once since the previous tick.
+     */
+    public int getPeakWaiting() {
+        return peakWaiting;
+    }
+
+    public int getLeases() {
+        return leases;
+    }
+
+    public long getP95LeaseMillis() {
+        return p95LeaseMillis;
+    }
+
+    public Decision getDecision() {
+        return decision;
+    }
+
+    /*
+     * Pool size after the decision.
+     */
+    public int getNewSize() {
+        return newSize;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /*
+     * Decisions to grow and to shrink since the autoscaler was
+     * created.
+     */
+    public long getGrows() {
+        return grows;
+    }
+
+    public long getShrinks() {
+        return shrinks;
+    }
+
+    public String toString() {
+        return "ScalingMetrics [ decision=" + decision + ", size=" + size +
+            "->" + newSize + ", reason=" + reason + ", total=" + total +
+            ", idle=" + idle + ", waiting=" + waiting + ", peakWaiting=" +
+            peakWaiting + ", leases=" + leases + ", p95LeaseMs=" +
+            p95LeaseMillis + ", grows=" + grows + ", shrinks=" + shrinks +
+            " ]";
+    }
+
+}
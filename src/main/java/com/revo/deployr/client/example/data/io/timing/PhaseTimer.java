@@ -0,0 +1,86 @@
+/*
+ * PhaseTimer.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.timing;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * PhaseTimer
+ *
+ * Records the elapsed time of named phases, which may run on
+ * different threads and overlap. The report compares the wall
+ * time since the timer was created with the sum of the phase
+ * times, the difference being the time saved by running the
+ * phases concurrently rather than one after another.
+ */
+public class PhaseTimer {
+
+    private final long created = System.nanoTime();
+    private final Map<String, long[]> phases =
+                                new LinkedHashMap<String, long[]>();
+
+    public synchronized void begin(String phase) {
+        phases.put(phase, new long[] { System.nanoTime(), -1 });
+    }
+
+    public synchronized void end(String phase) {
+        long[] times = phases.get(phase);
+        if(times != null && times[1] < 0) {
+            times[1] = System.nanoTime();
+        }
+    }
+
+    /*
+     * Elapsed milliseconds of phase, up to now when the phase
+     * has not ended yet, or -1 when it never began.
+     */
+    public synchronized long elapsedMillis(String phase) {
+        long[] times = phases.get(phase);
+        if(times == null) {
+            return -1;
+        }
+        long end = times[1] < 0 ? System.nanoTime() : times[1];
+        return (end - times[0]) / 1000000L;
+    }
+
+    public long wallMillis() {
+        return (System.nanoTime() - created) / 1000000L;
+    }
+
+    /*
+     * Logs one line per phase followed by the wall time, the
+     * sequential time (sum of all phases) and the time saved.
+     * Phases listed in excluded, such as the wait on a join, are
+     * reported but not counted in the sequential time.
+     */
+    public synchronized void report(Logger log, String... excluded) {
+
+        List<String> skip = Arrays.asList(excluded);
+        long sequential = 0;
+
+        for(String phase : phases.keySet()) {
+            long millis = elapsedMillis(phase);
+            if(!skip.contains(phase)) {
+                sequential += millis;
+            }
+            log.info("[     TIMING     ] " + phase + "=" + millis + "ms");
+        }
+
+        long wall = wallMillis();
+        log.info("[     TIMING     ] wall=" + wall + "ms, sequential=" +
+            sequential + "ms, saved=" + Math.max(0, sequential - wall) + "ms");
+    }
+
+}
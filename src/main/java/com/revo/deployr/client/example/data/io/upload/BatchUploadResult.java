@@ -0,0 +1,90 @@
+/*
+ * BatchUploadResult.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.util.*;
+import java.io.*;
+
+/*
+ * BatchUploadResult
+ *
+ * Outcome of one BatchUploader batch: the result of every file
+ * uploaded, the last exception of every file that failed, both
+ * in batch order, and the totals.
+ */
+public class BatchUploadResult {
+
+    private final List<UploadResult> uploads;
+    private final Map<File, Exception> failures;
+    private final int retries;
+    private final long millis;
+
+    BatchUploadResult(List<UploadResult> uploads,
+                      Map<File, Exception> failures,
+                      int retries, long millis) {
+        this.uploads = Collections.unmodifiableList(uploads);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.retries = retries;
+        this.millis = millis;
+    }
+
+    public List<UploadResult> getUploads() {
+        return uploads;
+    }
+
+    public Map<File, Exception> getFailures() {
+        return failures;
+    }
+
+    /*
+     * True when every file of the batch was uploaded.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /*
+     * Attempts beyond the first, over all files.
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    public long getSourceBytes() {
+        long bytes = 0;
+        for(UploadResult upload : uploads) {
+            bytes += upload.getSourceBytes();
+        }
+        return bytes;
+    }
+
+    public long getSentBytes() {
+        long bytes = 0;
+        for(UploadResult upload : uploads) {
+            bytes += upload.getSentBytes();
+        }
+        return bytes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public String toString() {
+        return "BatchUploadResult [ uploaded=" + uploads.size() +
+            ", failed=" + failures.size() + ", retries=" + retries +
+            ", source=" + getSourceBytes() + ", sent=" + getSentBytes() +
+            ", ms=" + millis + " ]";
+    }
+
+}
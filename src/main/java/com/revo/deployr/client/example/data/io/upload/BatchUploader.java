@@ -0,0 +1,272 @@
+/*
+ * BatchUploader.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.params.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+import org.apache.log4j.Logger;
+
+/*
+ * BatchUploader
+ *
+ * Uploads a batch of local files to the working directory of an
+ * RProject, several at a time. Each file goes through the
+ * ProjectUploader given, so its compression and dedupe settings
+ * apply per file, and keeps its own name in the working
+ * directory. Working directories are flat, so of files sharing a
+ * name, as "**" matches in different directories may, the first
+ * is uploaded and each later one fails on its own.
+ *
+ * Files are started largest first so that the batch does not end
+ * waiting on one big file started last. A failed file is retried
+ * after a doubling delay up to the attempt limit; RSecurityException
+ * is not retried. The batch always runs to the end and reports
+ * every outcome in one BatchUploadResult.
+ *
+ * The uploads share the RClient connection of the project, the
+ * number actually in flight is also bounded by its HTTP
+ * connection pool.
+ */
+public class BatchUploader {
+
+    private static Logger log = Logger.getLogger(BatchUploader.class);
+
+    private final ProjectUploader uploader;
+    private int concurrency = 4;
+    private int maxAttempts = 3;
+    private long retryDelayMillis = 500;
+    private boolean overwrite = true;
+    private UploadProgressListener listener;
+
+    public BatchUploader(ProjectUploader uploader) {
+        this.uploader = uploader;
+    }
+
+    /*
+     * Most uploads in flight at once.
+     */
+    public BatchUploader setConcurrency(int concurrency) {
+        this.concurrency = Math.max(concurrency, 1);
+        return this;
+    }
+
+    /*
+     * Attempts per file, including the first.
+     */
+    public BatchUploader setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        return this;
+    }
+
+    /*
+     * Delay before the first retry of a file, doubled on each
+     * further retry.
+     */
+    public BatchUploader setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+        return this;
+    }
+
+    public BatchUploader setOverwrite(boolean overwrite) {
+        this.overwrite = overwrite;
+        return this;
+    }
+
+    public BatchUploader setProgressListener(UploadProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /*
+     * upload
+     *
+     * Uploads the files below directory matching glob, see
+     * FileGlob.
+     */
+    public BatchUploadResult upload(RProject rProject, File directory,
+                                    String glob) throws IOException {
+        return upload(rProject, FileGlob.match(directory, glob));
+    }
+
+    /*
+     * upload
+     *
+     * Uploads files and waits for the batch to complete.
+     */
+    public BatchUploadResult upload(RProject rProject, List<File> files)
+                                                    throws IOException {
+
+        long start = System.currentTimeMillis();
+
+        Progress progress = new Progress(files);
+        Map<String, File> names = new HashMap<String, File>();
+        Map<File, Exception> duplicates = new HashMap<File, Exception>();
+        List<File> order = new ArrayList<File>(files.size());
+        for(File file : files) {
+            File first = names.get(file.getName());
+            if(first == null) {
+                names.put(file.getName(), file);
+                order.add(file);
+            } else {
+                duplicates.put(file, new IOException("Duplicate working " +
+                    "directory filename in batch, " + file + ", already " +
+                    "uploading " + first));
+                progress.done(file, false);
+            }
+        }
+
+        Collections.sort(order, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = b.length() - a.length();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+
+        Map<File, Future<UploadResult>> futures =
+                            new HashMap<File, Future<UploadResult>>();
+        List<UploadResult> uploads = new ArrayList<UploadResult>();
+        Map<File, Exception> failures = new LinkedHashMap<File, Exception>();
+
+        if(files.isEmpty()) {
+            return new BatchUploadResult(uploads, failures, 0, 0);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                                    Math.min(concurrency, order.size()));
+        try {
+            for(File file : order) {
+                futures.put(file, executor.submit(
+                        new FileTask(rProject, file, progress)));
+            }
+            for(File file : files) {
+                if(duplicates.containsKey(file)) {
+                    failures.put(file, duplicates.get(file));
+                    continue;
+                }
+                try {
+                    uploads.add(futures.get(file).get());
+                } catch(ExecutionException eex) {
+                    Throwable cause = eex.getCause();
+                    failures.put(file, cause instanceof Exception ?
+                        (Exception) cause : new ExecutionException(cause));
+                }
+            }
+        } catch(InterruptedException iex) {
+            for(Future<UploadResult> future : futures.values()) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch upload interrupted.");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        BatchUploadResult result = new BatchUploadResult(uploads, failures,
+            progress.getRetries(), System.currentTimeMillis() - start);
+        log.debug("Batch upload completed, concurrency=" + concurrency +
+                                                        ", " + result);
+        return result;
+    }
+
+    /*
+     * Uploads one file, retrying as configured.
+     */
+    private class FileTask implements Callable<UploadResult> {
+
+        private final RProject rProject;
+        private final File file;
+        private final Progress progress;
+
+        FileTask(RProject rProject, File file, Progress progress) {
+            this.rProject = rProject;
+            this.file = file;
+            this.progress = progress;
+        }
+
+        public UploadResult call() throws Exception {
+
+            DirectoryUploadOptions options = new DirectoryUploadOptions();
+            options.filename = file.getName();
+            options.overwrite = overwrite;
+
+            for(int attempt = 1; ; attempt++) {
+                try {
+                    UploadResult result = uploader.upload(rProject,
+                                                        file, options);
+                    progress.done(file, true);
+                    return result;
+                } catch(RSecurityException sex) {
+                    progress.done(file, false);
+                    throw sex;
+                } catch(Exception ex) {
+                    if(attempt >= maxAttempts || ex instanceof InterruptedIOException) {
+                        progress.done(file, false);
+                        throw ex;
+                    }
+                    log.debug("Upload attempt " + attempt + " failed, file=" +
+                                        file + ", retrying, ex=" + ex);
+                    progress.retried();
+                    try {
+                        Thread.sleep(retryDelayMillis << (attempt - 1));
+                    } catch(InterruptedException iex) {
+                        progress.done(file, false);
+                        throw iex;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Running totals of a batch, reported to the listener.
+     */
+    private class Progress {
+
+        private final int filesTotal;
+        private final long bytesTotal;
+        private int filesDone;
+        private long bytesDone;
+        private int retries;
+
+        Progress(List<File> files) {
+            long bytes = 0;
+            for(File file : files) {
+                bytes += file.length();
+            }
+            this.filesTotal = files.size();
+            this.bytesTotal = bytes;
+        }
+
+        synchronized void done(File file, boolean uploaded) {
+            filesDone++;
+            bytesDone += file.length();
+            if(listener != null) {
+                listener.progress(file, uploaded, filesDone, filesTotal,
+                                                    bytesDone, bytesTotal);
+            }
+        }
+
+        synchronized void retried() {
+            retries++;
+        }
+
+        synchronized int getRetries() {
+            return retries;
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * BoundedPipe.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.io.*;
+
+/*
+ * BoundedPipe
+ *
+ * A byte pipe between one writing and one reading thread over a
+ * fixed size ring buffer. The writer blocks while the buffer is
+ * full and the reader while it is empty, so memory use stays at
+ * the buffer size however much data passes through.
+ *
+ * Failures travel both ways: fail on the writer side makes the
+ * reader see an IOException carrying the cause once the buffered
+ * bytes are drained, and a reader that closes or fails early
+ * makes the next write throw instead of blocking forever.
+ *
+ * Unlike java.io.PipedInputStream it does not poll and does not
+ * tie either end to the thread that first used it.
+ */
+public class BoundedPipe {
+
+    private final byte[] buffer;
+    private int readPos;
+    private int count;
+    private boolean writerClosed;
+    private boolean readerClosed;
+    private Throwable writerError;
+    private Throwable readerError;
+
+    private final InputStream in = new PipeInputStream();
+    private final OutputStream out = new PipeOutputStream();
+
+    public BoundedPipe(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Pipe capacity must be positive.");
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /*
+     * Ends the writer side abnormally, the reader fails with cause
+     * once it has drained the buffered bytes. Ignored once the
+     * reader is closed, the writer failure is then a consequence
+     * rather than a cause.
+     */
+    public synchronized void failWriter(Throwable cause) {
+        if(!writerClosed && !readerClosed) {
+            writerError = cause;
+            writerClosed = true;
+            notifyAll();
+        }
+    }
+
+    /*
+     * Ends the reader side abnormally, blocked and later writes
+     * fail with cause.
+     */
+    public synchronized void failReader(Throwable cause) {
+        if(readerError == null) {
+            readerError = cause;
+        }
+        readerClosed = true;
+        notifyAll();
+    }
+
+    /*
+     * The cause given to failWriter, or null.
+     */
+    public synchronized Throwable getWriterError() {
+        return writerError;
+    }
+
+    private synchronized int read(byte[] b, int off, int len)
+                                                throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(readerClosed) {
+            throw new IOException("Pipe closed.");
+        }
+        while(count == 0 && !writerClosed) {
+            await();
+        }
+        if(count == 0) {
+            if(writerError != null) {
+                throw new IOException("Pipe writer failed: " + writerError,
+                                                            writerError);
+            }
+            return -1;
+        }
+        int n = Math.min(len, count);
+        int first = Math.min(n, buffer.length - readPos);
+        System.arraycopy(buffer, readPos, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, n - first);
+        readPos = (readPos + n) % buffer.length;
+        count -= n;
+        notifyAll();
+        return n;
+    }
+
+    private synchronized void write(byte[] b, int off, int len)
+                                                throws IOException {
+        while(len > 0) {
+            if(writerClosed) {
+                throw new IOException("Pipe closed.");
+            }
+            while(count == buffer.length && !readerClosed) {
+                await();
+            }
+            if(readerClosed) {
+                throw new IOException("Pipe reader closed" +
+                    (readerError != null ? ": " + readerError : "."),
+                                                        readerError);
+            }
+            int n = Math.min(len, buffer.length - count);
+            int writePos = (readPos + count) % buffer.length;
+            int first = Math.min(n, buffer.length - writePos);
+            System.arraycopy(b, off, buffer, writePos, first);
+            System.arraycopy(b, off + first, buffer, 0, n - first);
+            count += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+
+    private synchronized int available() {
+        return count;
+    }
+
+    private synchronized void closeWriter() {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    private synchronized void closeReader() {
+        readerClosed = true;
+        notifyAll();
+    }
+
+    private void await() throws IOException {
+        try {
+            wait();
+        } catch(InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted on pipe.");
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return BoundedPipe.this.read(b, off, len);
+        }
+
+        public int available() {
+            return BoundedPipe.this.available();
+        }
+
+        public void close() {
+            closeReader();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            BoundedPipe.this.write(b, off, len);
+        }
+
+        public void close() {
+            closeWriter();
+        }
+    }
+
+}
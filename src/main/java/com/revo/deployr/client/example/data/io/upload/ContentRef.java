@@ -0,0 +1,97 @@
+/*
+ * ContentRef.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import com.revo.deployr.client.params.*;
+
+/*
+ * ContentRef
+ *
+ * A counted reference to a content-addressed repository file
+ * held by a RepositoryContentStore. Hand it back to the store
+ * with release once the runs using it are done.
+ */
+public class ContentRef {
+
+    private final String hash;
+    private final String filename;
+    private final String directory;
+    private final String author;
+    private final boolean uploaded;
+
+    ContentRef(String hash, String filename, String directory,
+                                    String author, boolean uploaded) {
+        this.hash = hash;
+        this.filename = filename;
+        this.directory = directory;
+        this.author = author;
+        this.uploaded = uploaded;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /*
+     * Repository filename, <sha256><extension>.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    /*
+     * True when promote uploaded the content, false when the
+     * repository already held it.
+     */
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    /*
+     * Preload options for ProjectCreationOptions.preloadDirectory
+     * or ProjectExecutionOptions.preloadDirectory. The file lands
+     * in the working directory under its repository filename.
+     */
+    public ProjectPreloadOptions toPreloadOptions() {
+        ProjectPreloadOptions preload = new ProjectPreloadOptions();
+        preload.filename = filename;
+        preload.directory = directory;
+        preload.author = author;
+        return preload;
+    }
+
+    /*
+     * R code giving the preloaded working directory file the
+     * name scripts expect, e.g. hipStar.dat. The code stops with
+     * an R error, failing the execution, when the rename fails,
+     * for example when the file was not preloaded.
+     */
+    public String toRenameCode(String name) {
+        return "if(!file.rename('" + filename + "', '" + name + "')) " +
+            "stop('Rename of " + filename + " to " + name + " failed.')";
+    }
+
+    public String toString() {
+        return "ContentRef [ /" + author + "/" + directory + "/" +
+                        filename + ", uploaded=" + uploaded + " ]";
+    }
+
+}
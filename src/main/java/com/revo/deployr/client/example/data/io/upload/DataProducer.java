@@ -0,0 +1,33 @@
+/*
+ * DataProducer.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.io.*;
+
+/*
+ * DataProducer
+ *
+ * Application code writing the content of a piped upload, see
+ * ProjectUploader. writeTo runs on its own thread; a write throws
+ * when the upload has failed, and an exception thrown by writeTo
+ * fails the upload.
+ */
+public interface DataProducer {
+
+    /*
+     * Writes the complete file content to out. There is no need
+     * to close out.
+     */
+    void writeTo(OutputStream out) throws Exception;
+
+}
@@ -0,0 +1,162 @@
+/*
+ * FileGlob.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.util.*;
+import java.util.regex.*;
+import java.io.*;
+
+/*
+ * FileGlob
+ *
+ * Matches files below a directory against a glob pattern on their
+ * '/' separated path relative to that directory:
+ *
+ *   *       any characters within one path segment
+ *   ?       one character within a path segment
+ *   **      any characters across segments, "**" + "/" also
+ *           matches no directory at all
+ *   [abc]   one character of a set, [!abc] negated
+ *   {a,b}   one of the alternatives
+ *
+ * Patterns without '/' or "**" only look at the directory itself.
+ * A directory reached twice, through a symbolic link, is searched
+ * once, so link cycles end. An empty set, [] or [!], is rejected
+ * with IllegalArgumentException.
+ */
+public class FileGlob {
+
+    private final Pattern regex;
+    private final boolean recursive;
+
+    public FileGlob(String glob) {
+        this.regex = Pattern.compile(toRegex(glob));
+        this.recursive = glob.indexOf('/') >= 0 || glob.indexOf("**") >= 0;
+    }
+
+    /*
+     * Returns the regular files below directory matching glob,
+     * ordered by relative path.
+     */
+    public static List<File> match(File directory, String glob)
+                                                throws IOException {
+        return new FileGlob(glob).match(directory);
+    }
+
+    public List<File> match(File directory) throws IOException {
+        if(!directory.isDirectory()) {
+            throw new FileNotFoundException("Not a directory, " + directory);
+        }
+        SortedMap<String, File> matches = new TreeMap<String, File>();
+        collect(directory, "", matches, new HashSet<String>());
+        return new ArrayList<File>(matches.values());
+    }
+
+    public boolean matches(String relativePath) {
+        return regex.matcher(relativePath).matches();
+    }
+
+    private void collect(File directory, String prefix,
+                         SortedMap<String, File> matches,
+                         Set<String> visited) throws IOException {
+        if(!visited.add(directory.getCanonicalPath())) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if(files == null) {
+            return;
+        }
+        for(File file : files) {
+            String path = prefix + file.getName();
+            if(file.isDirectory()) {
+                if(recursive) {
+                    collect(file, path + "/", matches, visited);
+                }
+            } else
+            if(file.isFile() && matches(path)) {
+                matches.put(path, file);
+            }
+        }
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() * 2);
+        boolean inGroup = false;
+        for(int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch(c) {
+                case '*':
+                    if(i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        if(i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    int close = glob.indexOf(']', i + 1);
+                    if(close < 0) {
+                        regex.append("\\[");
+                        break;
+                    }
+                    String set = glob.substring(i + 1, close);
+                    boolean negated = set.startsWith("!");
+                    if(negated) {
+                        set = set.substring(1);
+                    }
+                    if(set.length() == 0) {
+                        throw new IllegalArgumentException("Empty character " +
+                            "set at index " + i + " in glob " + glob);
+                    }
+                    regex.append('[');
+                    if(negated) {
+                        regex.append('^');
+                    }
+                    regex.append(set.replace("\\", "\\\\")
+                                    .replace("[", "\\[")).append(']');
+                    i = close;
+                    break;
+                case '{':
+                    inGroup = true;
+                    regex.append("(?:");
+                    break;
+                case '}':
+                    if(inGroup) {
+                        inGroup = false;
+                        regex.append(')');
+                    } else {
+                        regex.append("\\}");
+                    }
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    break;
+                default:
+                    if("\\.^$+()|".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * GzipCompressingInputStream.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.util.zip.*;
+import java.io.*;
+import org.apache.commons.io.input.CountingInputStream;
+
+/*
+ * GzipCompressingInputStream
+ *
+ * Reads the gzip (RFC 1952) compressed form of another stream.
+ * The source is deflated as it is read, so the compressed bytes
+ * can be handed to an API that pulls from an InputStream, such
+ * as RProject.uploadFile, without a temporary file or an
+ * in-memory copy.
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+    private static final byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final CountingInputStream counted;
+    private final CheckedInputStream source;
+    private final Deflater deflater;
+    private final DeflaterInputStream body;
+    private final byte[] trailer = new byte[8];
+    private long compressedBytes;
+    private int headerPos;
+    private int trailerPos = -1;
+
+    public GzipCompressingInputStream(InputStream in, int level) {
+        this.counted = new CountingInputStream(in);
+        this.source = new CheckedInputStream(counted, new CRC32());
+        this.deflater = new Deflater(level, true);
+        this.body = new DeflaterInputStream(source, deflater, 64 * 1024);
+    }
+
+    /*
+     * Bytes read from the source stream so far.
+     */
+    public long getSourceBytes() {
+        return counted.getByteCount();
+    }
+
+    /*
+     * Compressed bytes returned by this stream so far.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if(len == 0) {
+            return 0;
+        }
+
+        int n;
+        if(headerPos < HEADER.length) {
+            n = Math.min(len, HEADER.length - headerPos);
+            System.arraycopy(HEADER, headerPos, b, off, n);
+            headerPos += n;
+        } else
+        if(trailerPos < 0) {
+            n = body.read(b, off, len);
+            if(n < 0) {
+                writeTrailer();
+                return read(b, off, len);
+            }
+        } else
+        if(trailerPos < trailer.length) {
+            n = Math.min(len, trailer.length - trailerPos);
+            System.arraycopy(trailer, trailerPos, b, off, n);
+            trailerPos += n;
+        } else {
+            return -1;
+        }
+
+        compressedBytes += n;
+        return n;
+    }
+
+    public void close() throws IOException {
+        deflater.end();
+        source.close();
+    }
+
+    /*
+     * CRC32 and length of the uncompressed data, little-endian.
+     */
+    private void writeTrailer() {
+        long crc = source.getChecksum().getValue();
+        long size = counted.getByteCount() & 0xFFFFFFFFL;
+        for(int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (crc >> (8 * i));
+            trailer[4 + i] = (byte) (size >> (8 * i));
+        }
+        trailerPos = 0;
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * ProjectUploader.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.zip.*;
+import java.io.*;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ProjectUploader
+ *
+ * Uploads files to the working directory of an RProject through
+ * RProject.uploadFile.
+ *
+ * With compression enabled the file is gzip compressed as it is
+ * streamed into the upload, no temporary file is written. The
+ * working directory file keeps the target filename given in the
+ * DirectoryUploadOptions; R connections opened by read.table and
+ * friends detect gzip content and decompress it transparently, so
+ * scripts read the file unchanged.
+ *
+ * With an UploadManifest set, file uploads are deduplicated: the
+ * SHA-256 of the file is compared with the hash recorded for the
+ * target filename in the project manifest and the transfer is
+ * skipped on a match. The manifest outlives the connection and
+ * the working directory can change behind it, so every match is
+ * confirmed against the project file listing, a single metadata
+ * call, before the transfer is skipped. The listing gives only
+ * the filename and size, a script that rewrites the file in the
+ * working directory at the same size goes unnoticed. With
+ * verifyContent set the project file is downloaded and hashed
+ * instead, which still saves the transfer where the upload is the
+ * slow direction.
+ *
+ * Data generated by the application is uploaded through a
+ * DataProducer: it writes on a thread of its own into a
+ * BoundedPipe that the upload reads on the calling thread. Nothing
+ * touches local disk and memory is bounded by the pipe capacity,
+ * so content of any size can be shipped.
+ */
+public class ProjectUploader {
+
+    private static Logger log = Logger.getLogger(ProjectUploader.class);
+
+    private boolean compress;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private UploadManifest manifest;
+    private boolean verifyContent;
+    private int pipeCapacity = 256 * 1024;
+
+    public ProjectUploader setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /*
+     * Deflater level, 1 (fastest) to 9 (smallest).
+     */
+    public ProjectUploader setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /*
+     * Manifest of uploaded file hashes, null disables dedupe.
+     */
+    public ProjectUploader setManifest(UploadManifest manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    /*
+     * Confirms a manifest match by the content of the project file
+     * rather than its size.
+     */
+    public ProjectUploader setVerifyContent(boolean verifyContent) {
+        this.verifyContent = verifyContent;
+        return this;
+    }
+
+    /*
+     * Buffer size of piped uploads, the most a producer can run
+     * ahead of the upload.
+     */
+    public ProjectUploader setPipeCapacity(int pipeCapacity) {
+        this.pipeCapacity = pipeCapacity;
+        return this;
+    }
+
+    /*
+     * upload
+     *
+     * Uploads file, or with a manifest set skips the transfer when
+     * the project already holds identical content under the
+     * target filename.
+     */
+    public UploadResult upload(RProject rProject, File file,
+                               DirectoryUploadOptions options)
+            throws RClientException, RSecurityException, IOException {
+
+        String projectId = null;
+        String hash = null;
+
+        if(manifest != null) {
+            long start = System.currentTimeMillis();
+            projectId = rProject.about().id;
+            hash = UploadManifest.hashOf(file) + (compress ? ".gz" : "");
+
+            if(hash.equals(manifest.getHash(projectId, options.filename))) {
+                RProjectFile existing = verify(rProject, projectId,
+                                                options.filename, hash);
+                if(existing != null) {
+                    UploadResult result = new UploadResult(options.filename,
+                        existing, file.length(), 0L,
+                        System.currentTimeMillis() - start, true);
+                    log.debug("Upload skipped, content unchanged, " + result);
+                    return result;
+                }
+            }
+        }
+
+        MappedDatFile dataFile = new MappedDatFile(file);
+        UploadResult result;
+        try {
+            result = upload(rProject, dataFile.openStream(), options);
+        } finally {
+            IOUtils.closeQuietly(dataFile);
+        }
+
+        if(manifest != null) {
+            manifest.put(projectId, options.filename, hash,
+                                            result.getSentBytes());
+        }
+        return result;
+    }
+
+    /*
+     * upload
+     *
+     * Uploads the remaining bytes of is, which is closed before
+     * returning. Streams are always transferred, their content is
+     * not known up front so the manifest is not consulted.
+     */
+    public UploadResult upload(RProject rProject, InputStream is,
+                               DirectoryUploadOptions options)
+            throws RClientException, RSecurityException, IOException {
+
+        long start = System.currentTimeMillis();
+        CountingInputStream counted = null;
+        GzipCompressingInputStream gzip = null;
+
+        try {
+            RProjectFile projFile;
+            long sourceBytes;
+            long sentBytes;
+
+            if(compress) {
+                gzip = new GzipCompressingInputStream(is, compressionLevel);
+                projFile = rProject.uploadFile(gzip, options);
+                sourceBytes = gzip.getSourceBytes();
+                sentBytes = gzip.getCompressedBytes();
+            } else {
+                counted = new CountingInputStream(is);
+                projFile = rProject.uploadFile(counted, options);
+                sourceBytes = counted.getByteCount();
+                sentBytes = sourceBytes;
+            }
+
+            UploadResult result = new UploadResult(options.filename, projFile,
+                sourceBytes, sentBytes, System.currentTimeMillis() - start,
+                false);
+            log.debug("Upload completed, compress=" + compress + ", " + result);
+            return result;
+
+        } finally {
+            IOUtils.closeQuietly(gzip);
+            IOUtils.closeQuietly(counted);
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /*
+     * upload
+     *
+     * Uploads the content written by producer, which runs on an
+     * "upload-producer" daemon thread while the upload consumes
+     * its output. If the producer throws the upload is failed and
+     * an IOException carrying the producer exception is thrown;
+     * if the upload fails the producer's next write throws.
+     */
+    public UploadResult upload(RProject rProject, final DataProducer producer,
+                               DirectoryUploadOptions options)
+            throws RClientException, RSecurityException, IOException {
+
+        final BoundedPipe pipe = new BoundedPipe(pipeCapacity);
+
+        Thread producerThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    OutputStream out = new BufferedOutputStream(
+                                    pipe.getOutputStream(), 8 * 1024);
+                    producer.writeTo(out);
+                    out.close();
+                } catch(Throwable t) {
+                    log.debug("Data producer stopped, ex=" + t);
+                    pipe.failWriter(t);
+                }
+            }
+        }, "upload-producer");
+        producerThread.setDaemon(true);
+        producerThread.start();
+
+        /*
+         * The pipe is closed here rather than by the upload so a
+         * failure reaches the producer with its cause.
+         */
+        try {
+            return upload(rProject,
+                new CloseShieldInputStream(pipe.getInputStream()), options);
+        } catch(RClientException rex) {
+            throw abortPipe(pipe, rex);
+        } catch(RSecurityException sex) {
+            throw abortPipe(pipe, sex);
+        } catch(IOException ioex) {
+            throw abortPipe(pipe, ioex);
+        } catch(RuntimeException rtex) {
+            throw abortPipe(pipe, rtex);
+        } finally {
+            IOUtils.closeQuietly(pipe.getInputStream());
+        }
+    }
+
+    /*
+     * Stops the producer of a failed piped upload. Returns failure
+     * to rethrow, or in its place an IOException carrying the
+     * producer exception when the producer failed first.
+     */
+    private static <T extends Throwable> T abortPipe(BoundedPipe pipe,
+                                                    T failure)
+            throws IOException {
+        pipe.failReader(failure);
+        Throwable producerError = pipe.getWriterError();
+        if(producerError != null) {
+            throw new IOException("Data producer failed: " + producerError,
+                                                            producerError);
+        }
+        return failure;
+    }
+
+    /*
+     * verify
+     *
+     * Returns the working directory file recorded in the manifest,
+     * or null, dropping the entry, when the project file listing
+     * no longer holds it at the recorded size or, with
+     * verifyContent, with the recorded hash.
+     */
+    private RProjectFile verify(RProject rProject, String projectId,
+                                String filename, String hash)
+            throws RClientException, RSecurityException, IOException {
+
+        long size = manifest.getSize(projectId, filename);
+
+        for(RProjectFile projFile : rProject.listFiles()) {
+            if(filename.equals(projFile.about().filename)) {
+                if(projFile.about().size == size && (!verifyContent ||
+                                    hash.equals(contentHash(projFile)))) {
+                    return projFile;
+                }
+                break;
+            }
+        }
+
+        log.debug("Manifest entry stale, filename=" + filename +
+                                            ", project=" + projectId);
+        manifest.remove(projectId, filename);
+        return null;
+    }
+
+    /*
+     * Hash of the content of projFile as the manifest records it,
+     * of the uncompressed content when uploads are compressed.
+     */
+    private String contentHash(RProjectFile projFile)
+            throws RClientException, RSecurityException, IOException {
+        InputStream in = projFile.download();
+        try {
+            return compress ?
+                UploadManifest.hashOf(new GZIPInputStream(in)) + ".gz" :
+                UploadManifest.hashOf(in);
+        } catch(ZipException zex) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+}
@@ -0,0 +1,489 @@
+/*
+ * RepositoryContentStore.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import com.revo.deployr.client.*;
+import com.revo.deployr.client.params.*;
+import com.revo.deployr.client.example.data.io.columnar.*;
+import java.util.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.util.regex.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * RepositoryContentStore
+ *
+ * Promotes local files into the DeployR repository once, under a
+ * content-addressed name, <sha256><extension>, in a dedicated
+ * repository directory. Later runs reference the repository copy
+ * through preloadDirectory instead of uploading the file again,
+ * the per run cost no longer depends on the file size.
+ *
+ * promote hands out a counted ContentRef, release returns it.
+ * Counts and release times are kept in a local index file. A file
+ * whose count has dropped to zero is deleted from the repository
+ * by sweep, which release also runs, once it has been unreferenced
+ * for the retention period; a later promote of the same content
+ * within that period reuses the repository copy.
+ *
+ * Several processes may share the index file. Every change is
+ * made under an exclusive lock on <index>.lock, against the index
+ * as read from the file under that lock, so counts taken by other
+ * processes are kept. No repository call is made under the lock.
+ * sweep first marks the files it is about to delete, then claims
+ * each one under the lock, only while its count is still zero,
+ * deletes it after releasing the lock and clears the claim. A
+ * promote finding the mark takes its reference and checks the
+ * repository copy again; one finding a claim waits for the delete
+ * to finish, or for the claim to be claimTimeoutMillis old when
+ * the sweep died part way.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dcas.index=file          reference count index (default
+ *                             <java.io.tmpdir>/example-data-io-cas.properties)
+ *   -Dcas.directory=dir       repository directory (default example-data-io-cas)
+ *   -Dcas.retention.ms=ms     unreferenced retention (default 24h)
+ */
+public class RepositoryContentStore {
+
+    private static Logger log = Logger.getLogger(RepositoryContentStore.class);
+
+    private static final String REFS_SUFFIX = ".refs";
+    private static final String RELEASED_SUFFIX = ".released";
+    private static final String DELETING_SUFFIX = ".deleting";
+    private static final String CLAIMED_SUFFIX = ".claimed";
+
+    private static final long CLAIM_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+    private static final long CLAIM_POLL_MILLIS = 100;
+
+    /*
+     * How a missing repository file is reported by fetchFile, any
+     * other failure is not taken to mean the file is absent.
+     */
+    private static final Pattern NOT_FOUND = Pattern.compile(
+                "(?i)not\\s+found|does\\s+not\\s+exist|no\\s+such");
+
+    /*
+     * FileChannel locks are held per process, threads of this
+     * one take turns on this monitor first.
+     */
+    private static final Object INDEX_LOCK = new Object();
+
+    /*
+     * A change to the index, made under the lock. Returns true
+     * when the index changed and must be written back.
+     */
+    private interface IndexUpdate {
+        boolean apply(Properties index) throws Exception;
+    }
+
+    private static RepositoryContentStore defaultStore;
+
+    private final File indexFile;
+    private String directory = "example-data-io-cas";
+    private long retentionMillis = 24 * 60 * 60 * 1000L;
+
+    public RepositoryContentStore(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public static synchronized RepositoryContentStore getDefault() {
+        if(defaultStore == null) {
+            defaultStore = new RepositoryContentStore(new File(
+                System.getProperty("cas.index",
+                    new File(System.getProperty("java.io.tmpdir"),
+                        "example-data-io-cas.properties").getPath())))
+                .setDirectory(System.getProperty("cas.directory",
+                                            "example-data-io-cas"))
+                .setRetentionMillis(Long.getLong("cas.retention.ms",
+                                            24 * 60 * 60 * 1000L));
+        }
+        return defaultStore;
+    }
+
+    /*
+     * Repository directory holding the content-addressed files.
+     * DeployR repository directories are flat, so this is a
+     * directory of its own rather than a cas/ path below one.
+     */
+    public RepositoryContentStore setDirectory(String directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /*
+     * How long an unreferenced file is kept in the repository,
+     * 0 deletes it on the last release.
+     */
+    public RepositoryContentStore setRetentionMillis(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+        return this;
+    }
+
+    /*
+     * promote
+     *
+     * Returns a counted reference to the repository copy of file,
+     * uploading it first when the repository does not hold it.
+     * The reference is taken first, so a sweep can not delete the
+     * copy between the check and the reference.
+     */
+    public ContentRef promote(RUser rUser, File file)
+            throws RClientException, RSecurityException, IOException {
+
+        String hash = UploadManifest.hashOf(file);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        final String filename = hash + (dot > 0 ? name.substring(dot) : "");
+        String author = rUser.about().username;
+
+        final boolean[] deleting = new boolean[1];
+        final boolean[] claimed = new boolean[1];
+        while(true) {
+            update(new IndexUpdate() {
+                public boolean apply(Properties index) {
+                    String key = keyOf(filename);
+                    claimed[0] = isClaimed(index, filename);
+                    if(claimed[0]) {
+                        return false;
+                    }
+                    index.setProperty(key + REFS_SUFFIX,
+                            Integer.toString(refCountOf(index, filename) + 1));
+                    index.remove(key + RELEASED_SUFFIX);
+                    deleting[0] = index.remove(key + DELETING_SUFFIX) != null;
+                    deleting[0] |= index.remove(key + CLAIMED_SUFFIX) != null;
+                    return true;
+                }
+            });
+            if(!claimed[0]) {
+                break;
+            }
+            /*
+             * A sweep is deleting the repository copy.
+             */
+            try {
+                Thread.sleep(CLAIM_POLL_MILLIS);
+            } catch(InterruptedException iex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting " +
+                                "for a sweep, filename=" + filename);
+            }
+        }
+
+        if(deleting[0]) {
+            log.debug("Promoted content marked for deletion, checking " +
+                                    "repository copy, filename=" + filename);
+        }
+
+        boolean uploaded = false;
+        boolean done = false;
+        try {
+            /*
+             * Always checked against the repository: a file marked
+             * for deletion may be gone already when the sweep that
+             * marked it died part way.
+             */
+            if(fetch(rUser, filename, author) == null) {
+                long start = System.currentTimeMillis();
+                RepoUploadOptions options = new RepoUploadOptions();
+                options.filename = filename;
+                options.directory = directory;
+                options.descr = "Content-addressed copy of " + name + ".";
+                MappedDatFile dataFile = new MappedDatFile(file);
+                try {
+                    rUser.uploadFile(dataFile.openStream(), options);
+                } finally {
+                    IOUtils.closeQuietly(dataFile);
+                }
+                uploaded = true;
+                log.debug("Promoted " + name + " to /" + author + "/" +
+                    directory + "/" + filename + ", bytes=" + file.length() +
+                    ", ms=" + (System.currentTimeMillis() - start));
+            }
+            done = true;
+        } finally {
+            if(!done) {
+                dropReference(filename);
+            }
+        }
+        return new ContentRef(hash, filename, directory, author, uploaded);
+    }
+
+    /*
+     * release
+     *
+     * Drops one reference to ref, then sweeps.
+     */
+    public void release(RUser rUser, ContentRef ref) {
+        dropReference(ref.getFilename());
+        sweep(rUser);
+    }
+
+    /*
+     * sweep
+     *
+     * Deletes the repository files of this directory that have
+     * been unreferenced for the retention period. Returns the
+     * number of files removed.
+     */
+    public int sweep(RUser rUser) {
+
+        final List<String> expired = new ArrayList<String>();
+        final long now = System.currentTimeMillis();
+        final String prefix = directory + "/";
+
+        try {
+            update(new IndexUpdate() {
+                public boolean apply(Properties index) {
+                    for(String key : index.stringPropertyNames()) {
+                        if(!key.startsWith(prefix) ||
+                                !key.endsWith(RELEASED_SUFFIX)) {
+                            continue;
+                        }
+                        String filename = key.substring(prefix.length(),
+                                key.length() - RELEASED_SUFFIX.length());
+                        long released = Long.parseLong(index.getProperty(key));
+                        if(refCountOf(index, filename) == 0 &&
+                                    now - released >= retentionMillis) {
+                            index.setProperty(keyOf(filename) +
+                                    DELETING_SUFFIX, Long.toString(now));
+                            expired.add(filename);
+                        }
+                    }
+                    return !expired.isEmpty();
+                }
+            });
+        } catch(Exception ex) {
+            log.warn("Content index sweep failed, ex=" + ex);
+            return 0;
+        }
+
+        String author = rUser.about().username;
+        int removed = 0;
+        for(final String filename : expired) {
+            final boolean[] claimed = new boolean[1];
+            try {
+                update(new IndexUpdate() {
+                    public boolean apply(Properties index) {
+                        String key = keyOf(filename);
+                        if(refCountOf(index, filename) > 0 ||
+                                index.getProperty(key + DELETING_SUFFIX) == null) {
+                            /*
+                             * Promoted again since it was marked.
+                             */
+                            return index.remove(key + DELETING_SUFFIX) != null;
+                        }
+                        index.setProperty(key + CLAIMED_SUFFIX,
+                                Long.toString(System.currentTimeMillis()));
+                        claimed[0] = true;
+                        return true;
+                    }
+                });
+            } catch(Exception ex) {
+                log.warn("Content index sweep failed, filename=" +
+                                            filename + ", ex=" + ex);
+            }
+            if(!claimed[0]) {
+                continue;
+            }
+
+            /*
+             * Promotes of filename wait while it is claimed, the
+             * repository copy is deleted outside the lock.
+             */
+            final boolean[] deleted = new boolean[1];
+            try {
+                RRepositoryFile repoFile = fetch(rUser, filename, author);
+                if(repoFile != null) {
+                    repoFile.delete();
+                }
+                deleted[0] = true;
+            } catch(Exception ex) {
+                log.warn("Repository file delete failed, filename=" +
+                                            filename + ", ex=" + ex);
+            }
+
+            try {
+                update(new IndexUpdate() {
+                    public boolean apply(Properties index) {
+                        String key = keyOf(filename);
+                        index.remove(key + CLAIMED_SUFFIX);
+                        if(deleted[0] && refCountOf(index, filename) == 0) {
+                            index.remove(key + REFS_SUFFIX);
+                            index.remove(key + RELEASED_SUFFIX);
+                            index.remove(key + DELETING_SUFFIX);
+                        } else {
+                            deleted[0] = false;
+                        }
+                        return true;
+                    }
+                });
+            } catch(Exception ex) {
+                log.warn("Content index sweep failed, filename=" +
+                                            filename + ", ex=" + ex);
+            }
+            if(deleted[0]) {
+                removed++;
+            }
+        }
+
+        if(removed > 0) {
+            log.debug("Swept " + removed + " unreferenced file(s) from " +
+                                                            directory);
+        }
+        return removed;
+    }
+
+    /*
+     * Reference count of filename, as the index file holds it now.
+     */
+    public int getRefCount(final String filename) {
+        final int[] refs = new int[1];
+        try {
+            update(new IndexUpdate() {
+                public boolean apply(Properties index) {
+                    refs[0] = refCountOf(index, filename);
+                    return false;
+                }
+            });
+        } catch(Exception ex) {
+            log.warn("Content index unreadable, file=" + indexFile +
+                                                        ", ex=" + ex);
+        }
+        return refs[0];
+    }
+
+    private void dropReference(final String filename) {
+        try {
+            update(new IndexUpdate() {
+                public boolean apply(Properties index) {
+                    String key = keyOf(filename);
+                    int refs = Math.max(0, refCountOf(index, filename) - 1);
+                    index.setProperty(key + REFS_SUFFIX, Integer.toString(refs));
+                    if(refs == 0) {
+                        index.setProperty(key + RELEASED_SUFFIX,
+                                    Long.toString(System.currentTimeMillis()));
+                    }
+                    return true;
+                }
+            });
+        } catch(Exception ex) {
+            log.warn("Content index release failed, filename=" + filename +
+                                                            ", ex=" + ex);
+        }
+    }
+
+    private int refCountOf(Properties index, String filename) {
+        try {
+            return Integer.parseInt(index.getProperty(
+                                keyOf(filename) + REFS_SUFFIX, "0"));
+        } catch(NumberFormatException nfex) {
+            return 0;
+        }
+    }
+
+    /*
+     * True while a sweep, not older than CLAIM_TIMEOUT_MILLIS,
+     * deletes filename.
+     */
+    private boolean isClaimed(Properties index, String filename) {
+        String claimed = index.getProperty(keyOf(filename) + CLAIMED_SUFFIX);
+        try {
+            return claimed != null && System.currentTimeMillis() -
+                        Long.parseLong(claimed) < CLAIM_TIMEOUT_MILLIS;
+        } catch(NumberFormatException nfex) {
+            return false;
+        }
+    }
+
+    /*
+     * The repository file, or null when the repository reports it
+     * does not exist. Any other failure, of the network or the
+     * credentials, is thrown, rather than taken for a missing file
+     * to upload again.
+     */
+    private RRepositoryFile fetch(RUser rUser, String filename,
+                                                String author)
+            throws RClientException, RSecurityException {
+        try {
+            return rUser.fetchFile(filename, author, directory, null);
+        } catch(RClientException rex) {
+            if(rex.getMessage() != null &&
+                        NOT_FOUND.matcher(rex.getMessage()).find()) {
+                return null;
+            }
+            throw rex;
+        }
+    }
+
+    private String keyOf(String filename) {
+        return directory + "/" + filename;
+    }
+
+    /*
+     * Applies update to the index read from the file, and writes
+     * it back, under the index lock.
+     */
+    private void update(IndexUpdate update) throws IOException {
+        synchronized(INDEX_LOCK) {
+            RandomAccessFile lockFile = new RandomAccessFile(
+                            new File(indexFile.getPath() + ".lock"), "rw");
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    Properties index = loadIndex();
+                    if(update.apply(index)) {
+                        saveIndex(index);
+                    }
+                } catch(IOException ioex) {
+                    throw ioex;
+                } catch(Exception ex) {
+                    throw new IOException(ex.toString());
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    private Properties loadIndex() throws IOException {
+        Properties index = new Properties();
+        if(!indexFile.isFile()) {
+            return index;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(indexFile);
+            index.load(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return index;
+    }
+
+    private void saveIndex(Properties index) throws IOException {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(indexFile);
+            index.store(out, null);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * UploadManifest.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.util.*;
+import java.io.*;
+import java.security.*;
+import org.apache.commons.io.IOUtils;
+
+import org.apache.log4j.Logger;
+
+/*
+ * UploadManifest
+ *
+ * Records, per project, the content hash and stored size of each
+ * file uploaded to the project working directory. The manifest of
+ * a project is kept as <project id>.properties in the manifest
+ * directory, so it outlives the client connection and the JVM.
+ * Call clear when the project is closed, its files are gone and
+ * the manifest would otherwise be left behind.
+ *
+ * Optional system properties, used by getDefault():
+ *   -Dupload.manifest.dir=dir  manifest directory (default
+ *                              <java.io.tmpdir>/example-data-io-manifests)
+ */
+public class UploadManifest {
+
+    private static Logger log = Logger.getLogger(UploadManifest.class);
+
+    private static final String HASH_SUFFIX = ".sha256";
+    private static final String SIZE_SUFFIX = ".size";
+
+    private static UploadManifest defaultManifest;
+
+    private final File directory;
+    private final Map<String, Properties> projects =
+                                    new HashMap<String, Properties>();
+
+    public UploadManifest(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized UploadManifest getDefault() {
+        if(defaultManifest == null) {
+            defaultManifest = new UploadManifest(new File(
+                System.getProperty("upload.manifest.dir",
+                    new File(System.getProperty("java.io.tmpdir"),
+                        "example-data-io-manifests").getPath())));
+        }
+        return defaultManifest;
+    }
+
+    /*
+     * Returns the recorded hash of filename in project, or null.
+     */
+    public synchronized String getHash(String projectId, String filename) {
+        return load(projectId).getProperty(filename + HASH_SUFFIX);
+    }
+
+    /*
+     * Returns the recorded stored size of filename in project,
+     * or -1.
+     */
+    public synchronized long getSize(String projectId, String filename) {
+        try {
+            return Long.parseLong(load(projectId).getProperty(
+                                    filename + SIZE_SUFFIX, "-1"));
+        } catch(NumberFormatException nfex) {
+            return -1;
+        }
+    }
+
+    public synchronized void put(String projectId, String filename,
+                                 String hash, long size) {
+        Properties manifest = load(projectId);
+        manifest.setProperty(filename + HASH_SUFFIX, hash);
+        manifest.setProperty(filename + SIZE_SUFFIX, Long.toString(size));
+        store(projectId, manifest);
+    }
+
+    public synchronized void remove(String projectId, String filename) {
+        Properties manifest = load(projectId);
+        if(manifest.remove(filename + HASH_SUFFIX) != null) {
+            manifest.remove(filename + SIZE_SUFFIX);
+            store(projectId, manifest);
+        }
+    }
+
+    /*
+     * Forgets every file of project, for example once the
+     * project has been closed or its directory cleared.
+     */
+    public synchronized void clear(String projectId) {
+        projects.remove(projectId);
+        manifestFile(projectId).delete();
+    }
+
+    /*
+     * SHA-256 of the content of file, in hex.
+     */
+    public static String hashOf(File file) throws IOException {
+        return hashOf(new FileInputStream(file));
+    }
+
+    /*
+     * SHA-256 of the remaining content of in, in hex. in is
+     * closed before returning.
+     */
+    public static String hashOf(InputStream in) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while((n = in.read(buf)) != -1) {
+                md.update(buf, 0, n);
+            }
+            return toHex(md.digest());
+        } catch(NoSuchAlgorithmException nsaex) {
+            throw new IOException("SHA-256 unavailable.");
+        } finally {
+            in.close();
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for(byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private Properties load(String projectId) {
+        Properties manifest = projects.get(projectId);
+        if(manifest != null) {
+            return manifest;
+        }
+        manifest = new Properties();
+        File file = manifestFile(projectId);
+        if(file.isFile()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                manifest.load(in);
+            } catch(IOException ioex) {
+                log.warn("Manifest unreadable, file=" + file + ", ex=" + ioex);
+                manifest.clear();
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        projects.put(projectId, manifest);
+        return manifest;
+    }
+
+    private void store(String projectId, Properties manifest) {
+        File file = manifestFile(projectId);
+        OutputStream out = null;
+        try {
+            directory.mkdirs();
+            out = new FileOutputStream(file);
+            manifest.store(out, null);
+        } catch(IOException ioex) {
+            log.warn("Manifest write failed, file=" + file + ", ex=" + ioex);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private File manifestFile(String projectId) {
+        return new File(directory, projectId.replaceAll("[^A-Za-z0-9._-]", "_") +
+                                                            ".properties");
+    }
+
+}
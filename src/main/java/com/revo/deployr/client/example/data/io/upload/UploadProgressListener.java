@@ -0,0 +1,34 @@
+/*
+ * UploadProgressListener.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import java.io.*;
+
+/*
+ * UploadProgressListener
+ *
+ * Aggregate progress of a BatchUploader batch.
+ */
+public interface UploadProgressListener {
+
+    /*
+     * Called once per file when it has been uploaded, or has
+     * failed for good, with the running totals of the batch.
+     * Bytes are local file sizes, done counts both outcomes so
+     * it reaches the total at the end of the batch. Calls come
+     * from upload worker threads, one at a time.
+     */
+    void progress(File file, boolean uploaded, int filesDone,
+                  int filesTotal, long bytesDone, long bytesTotal);
+
+}
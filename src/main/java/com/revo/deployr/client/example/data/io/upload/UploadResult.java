@@ -0,0 +1,82 @@
+/*
+ * UploadResult.java
+ *
+ * Copyright (C) 2010-2015 by Revolution Analytics Inc.
+ *
+ * This program is licensed to you under the terms of Version 2.0 of the
+ * Apache License. This program is distributed WITHOUT
+ * ANY EXPRESS OR IMPLIED WARRANTY, INCLUDING THOSE OF NON-INFRINGEMENT,
+ * MERCHANTABILITY OR FITNESS FOR A PARTICULAR PURPOSE. Please refer to the
+ * Apache License 2.0 (http://www.apache.org/licenses/LICENSE-2.0) for more details.
+ *
+ */
+package com.revo.deployr.client.example.data.io.upload;
+
+import com.revo.deployr.client.*;
+
+/*
+ * UploadResult
+ *
+ * Outcome of one ProjectUploader upload: the working directory
+ * file and the bytes read from the source and actually sent.
+ * A skipped upload sent nothing, the project already held the
+ * same content.
+ */
+public class UploadResult {
+
+    private final String filename;
+    private final RProjectFile file;
+    private final long sourceBytes;
+    private final long sentBytes;
+    private final long millis;
+    private final boolean skipped;
+
+    UploadResult(String filename, RProjectFile file, long sourceBytes,
+                    long sentBytes, long millis, boolean skipped) {
+        this.filename = filename;
+        this.file = file;
+        this.sourceBytes = sourceBytes;
+        this.sentBytes = sentBytes;
+        this.millis = millis;
+        this.skipped = skipped;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /*
+     * The uploaded working directory file.
+     */
+    public RProjectFile getFile() {
+        return file;
+    }
+
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    public long getSavedBytes() {
+        return sourceBytes - sentBytes;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public String toString() {
+        return "UploadResult [ filename=" + filename + ", source=" +
+            sourceBytes + ", sent=" + sentBytes + ", saved=" +
+            getSavedBytes() + ", ms=" + millis + ", skipped=" +
+            skipped + " ]";
+    }
+
+}